@@ -0,0 +1,64 @@
+package dev.yxy.reactive.cache;
+
+import java.io.Serializable;
+
+/**
+ * 缓存值的信封，记录加载耗时和逻辑过期时间<br/>
+ * redis中的实际存活时间比逻辑过期时间长出一个陈旧窗口，窗口内读到的是过期的值，同时在后台刷新。<br/>
+ * 见{@link SingleFlightCache}
+ */
+public class CacheEntry implements Serializable {
+    private static final long serialVersionUID = -3712490862455360125L;
+
+    //缓存的值
+    private Object value;
+    //加载耗时，单位ms
+    private long delta;
+    //逻辑过期时间
+    private long expiry;
+
+    public CacheEntry() {
+    }
+
+    public CacheEntry(Object value, long delta, long expiry) {
+        this.value = value;
+        this.delta = delta;
+        this.expiry = expiry;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    public void setDelta(long delta) {
+        this.delta = delta;
+    }
+
+    public long getExpiry() {
+        return expiry;
+    }
+
+    public void setExpiry(long expiry) {
+        this.expiry = expiry;
+    }
+
+    @Override
+    public String toString() {
+        return "{"
+                + "\"value\":"
+                + value
+                + ",\"delta\":"
+                + delta
+                + ",\"expiry\":"
+                + expiry
+                + "}";
+    }
+}
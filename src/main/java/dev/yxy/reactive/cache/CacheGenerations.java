@@ -0,0 +1,114 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.cache.CacheKeyPrefix;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 注解缓存的代数(generation)<br/>
+ * 缓存key的前缀带上代数，清空缓存时只需要INCR代数，旧的key不再被访问，由TTL自然过期，
+ * 不会像{@link org.springframework.data.redis.cache.RedisCache#clear()}那样用KEYS阻塞redis。<br/>
+ * 第0代的前缀与默认的{@code cacheName::}相同，开启前写入的缓存仍然可以读到。<br/>
+ * 代数在本地缓存，其他节点清空缓存后通过{@link #CHANNEL}通知；订阅中断期间的通知会丢失，所以每次(重新)订阅时丢弃所有本地代数。
+ */
+@Component
+public class CacheGenerations implements CacheKeyPrefix {
+    private static final Logger logger = LoggerFactory.getLogger(CacheGenerations.class);
+
+    //代数变化的频道前缀
+    public static final String CHANNEL = "CACHE-GENERATION";
+
+    //cacheName -> 代数
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    //代数是INCR出来的计数器，直接读为Long
+    @Autowired
+    private RedisTemplate<String, Long> counterRedisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private ReactiveRedisMessageListenerContainer reactiveRedisMessageListenerContainer;
+
+    private Disposable subscription;
+
+    @NotNull
+    public static String generationKey(@NotNull String cacheName) {
+        return "CACHE-GENERATION:" + cacheName;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        subscription = reactiveRedisMessageListenerContainer.receive(PatternTopic.of(CHANNEL + ":*"))
+                .doOnSubscribe(s -> {
+                    logger.info("订阅缓存代数通知: [ {}:* ]", CHANNEL);
+                    generations.clear();
+                })
+                .doOnError(e -> logger.warn("缓存代数通知订阅中断，稍后重试", e))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> receive(message.getChannel().substring(CHANNEL.length() + 1), message.getMessage()));
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    @NotNull
+    @Override
+    public String compute(@NotNull String cacheName) {
+        long generation = generation(cacheName);
+        return generation == 0 ? cacheName + "::" : cacheName + ":G" + generation + "::";
+    }
+
+    /**
+     * 当前代数，本地没有时从redis读取
+     */
+    public long generation(@NotNull String cacheName) {
+        return generations.computeIfAbsent(cacheName, name -> {
+            Long value = counterRedisTemplate.opsForValue().get(generationKey(name));
+            return value != null ? value : 0L;
+        });
+    }
+
+    /**
+     * 进入下一代，相当于清空缓存，复杂度O(1)
+     *
+     * @return 新的代数
+     */
+    public long next(@NotNull String cacheName) {
+        Long generation = counterRedisTemplate.opsForValue().increment(generationKey(cacheName));
+        long next = generation != null ? generation : 0L;
+        generations.merge(cacheName, next, Math::max);
+        reactiveStringRedisTemplate.convertAndSend(CHANNEL + ":" + cacheName, String.valueOf(next))
+                .subscribe(null, e -> logger.warn("发布缓存代数通知[{}]失败", cacheName, e));
+        return next;
+    }
+
+    private void receive(@NotNull String cacheName, @NotNull String message) {
+        try {
+            //消息可能乱序，只前进不后退
+            generations.merge(cacheName, Long.parseLong(message), Math::max);
+        } catch (NumberFormatException e) {
+            logger.warn("无法识别的缓存代数通知：cache -> [{}], message -> [{}]", cacheName, message);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.cache.interceptor.KeyGenerator;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 注解缓存的key生成器<br/>
+ * key的格式为{@code 类名.方法名:参数1-参数2}，没有参数时为{@code 类名.方法名}。<br/>
+ * 每个方法的前缀只拼接一次，StringBuilder按前缀长度预先分配；数字、布尔值和字符直接写入，不生成中间字符串；
+ * 数组逐个元素写入，用逗号分隔。<br/>
+ * key超过最大长度时，参数部分换成SHA-256的前16字节(32位十六进制)，key的长度固定。
+ */
+public class CacheKeyGenerator implements KeyGenerator {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    //方法 -> 前缀，同一个方法一般只有一个目标类
+    private final Map<Method, Prefix> prefixes = new ConcurrentHashMap<>();
+
+    private final int maxLength;
+
+    /**
+     * @param maxLength key的最大长度，超过后参数部分使用摘要，不大于0时不使用摘要
+     */
+    public CacheKeyGenerator(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @NotNull
+    @Override
+    public Object generate(@NotNull Object target, @NotNull Method method, @NotNull Object... params) {
+        String prefix = prefix(target.getClass(), method);
+        if (params.length == 0) {
+            return prefix;
+        }
+        StringBuilder builder = new StringBuilder(prefix.length() + 16 * params.length);
+        builder.append(prefix).append(':');
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                builder.append('-');
+            }
+            append(builder, params[i]);
+        }
+        return maxLength > 0 && builder.length() > maxLength ? digest(builder, prefix.length() + 1) : builder.toString();
+    }
+
+    @NotNull
+    private String prefix(@NotNull Class<?> targetClass, @NotNull Method method) {
+        Prefix prefix = prefixes.get(method);
+        if (prefix == null || prefix.targetClass != targetClass) {
+            //继承的方法可能有多个目标类，以最后一次为准
+            prefix = new Prefix(targetClass, targetClass.getSimpleName() + "." + method.getName());
+            prefixes.put(method, prefix);
+        }
+        return prefix.value;
+    }
+
+    //按类型写入参数，常见类型不经过toString
+    private static void append(@NotNull StringBuilder builder, @Nullable Object param) {
+        if (param == null) {
+            builder.append("null");
+        } else if (param instanceof CharSequence) {
+            builder.append((CharSequence) param);
+        } else if (param instanceof Long || param instanceof Integer || param instanceof Short || param instanceof Byte) {
+            builder.append(((Number) param).longValue());
+        } else if (param instanceof Boolean) {
+            builder.append(((Boolean) param).booleanValue());
+        } else if (param instanceof Character) {
+            builder.append(((Character) param).charValue());
+        } else if (param instanceof Enum) {
+            builder.append(((Enum<?>) param).name());
+        } else if (param.getClass().isArray()) {
+            int length = Array.getLength(param);
+            builder.append('[');
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                append(builder, Array.get(param, i));
+            }
+            builder.append(']');
+        } else {
+            builder.append(param);
+        }
+    }
+
+    private static final class Prefix {
+        private final Class<?> targetClass;
+        private final String value;
+
+        private Prefix(Class<?> targetClass, String value) {
+            this.targetClass = targetClass;
+            this.value = value;
+        }
+    }
+
+    //把from之后的部分换成摘要
+    @NotNull
+    private static String digest(@NotNull StringBuilder builder, int from) {
+        MessageDigest digest = DIGEST.get();
+        byte[] hash = digest.digest(builder.substring(from).getBytes(StandardCharsets.UTF_8));
+        builder.setLength(from);
+        builder.append('#');
+        for (int i = 0; i < 16; i++) {
+            builder.append(HEX[(hash[i] >> 4) & 0xF]).append(HEX[hash[i] & 0xF]);
+        }
+        return builder.toString();
+    }
+}
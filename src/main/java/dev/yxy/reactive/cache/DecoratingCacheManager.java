@@ -0,0 +1,66 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 装饰另一个CacheManager，给它返回的每个Cache加上一层装饰<br/>
+ * 同一个名字的Cache只装饰一次，之后一直返回同一个装饰后的实例。
+ */
+public class DecoratingCacheManager implements CacheManager, InitializingBean {
+
+    private final CacheManager delegate;
+    private final Function<Cache, Cache> decorator;
+    //cacheName -> 装饰后的Cache
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate  被装饰的CacheManager
+     * @param decorator 装饰方法
+     */
+    public DecoratingCacheManager(@NotNull CacheManager delegate, @NotNull Function<Cache, Cache> decorator) {
+        this.delegate = delegate;
+        this.decorator = decorator;
+    }
+
+    //被装饰的CacheManager不是Bean，需要在这里初始化
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (delegate instanceof InitializingBean) {
+            ((InitializingBean) delegate).afterPropertiesSet();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cache getCache(@NotNull String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, k -> decorator.apply(target));
+    }
+
+    @NotNull
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    @NotNull
+    public CacheManager getDelegate() {
+        return delegate;
+    }
+}
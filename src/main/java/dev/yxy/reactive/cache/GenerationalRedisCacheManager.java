@@ -0,0 +1,69 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 按代数清空的RedisCacheManager<br/>
+ * 缓存配置需要用{@link RedisCacheConfiguration#computePrefixWith}设置{@link CacheGenerations}，
+ * {@link RedisCache#clear()}不再用KEYS删除，而是进入下一代，旧的key由TTL过期。<br/>
+ * 没有设置TTL的缓存旧的key不会过期，仍然按原来的方式删除。
+ */
+public class GenerationalRedisCacheManager extends RedisCacheManager {
+
+    private final RedisCacheWriter cacheWriter;
+    private final RedisCacheConfiguration defaultCacheConfiguration;
+    private final CacheGenerations generations;
+
+    /**
+     * @param cacheWriter                redis读写
+     * @param defaultCacheConfiguration  默认配置
+     * @param initialCacheConfigurations 按缓存名的配置
+     * @param generations                缓存代数
+     */
+    public GenerationalRedisCacheManager(@NotNull RedisCacheWriter cacheWriter,
+                                         @NotNull RedisCacheConfiguration defaultCacheConfiguration,
+                                         @NotNull Map<String, RedisCacheConfiguration> initialCacheConfigurations,
+                                         @NotNull CacheGenerations generations) {
+        super(cacheWriter, defaultCacheConfiguration, initialCacheConfigurations);
+        this.cacheWriter = cacheWriter;
+        this.defaultCacheConfiguration = defaultCacheConfiguration;
+        this.generations = generations;
+    }
+
+    @NotNull
+    @Override
+    protected RedisCache createRedisCache(@NotNull String name, @Nullable RedisCacheConfiguration cacheConfig) {
+        return new GenerationalRedisCache(name, cacheWriter, cacheConfig != null ? cacheConfig : defaultCacheConfiguration, generations);
+    }
+
+    /**
+     * 按代数清空的RedisCache
+     */
+    public static class GenerationalRedisCache extends RedisCache {
+
+        private final CacheGenerations generations;
+
+        protected GenerationalRedisCache(@NotNull String name, @NotNull RedisCacheWriter cacheWriter, @NotNull RedisCacheConfiguration cacheConfig, @NotNull CacheGenerations generations) {
+            super(name, cacheWriter, cacheConfig);
+            this.generations = generations;
+        }
+
+        @Override
+        public void clear() {
+            Duration ttl = getCacheConfiguration().getTtl();
+            if (ttl.isZero() || ttl.isNegative()) {
+                super.clear();
+                return;
+            }
+            generations.next(getName());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.cache.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.ToLongFunction;
+
+/**
+ * 二级缓存，进程内的L1在前，redis的L2在后<br/>
+ * L1按LRU淘汰，条目数超过{@code maxEntries}或者总重量超过{@code maxWeight}时移除最久未访问的条目，每个条目最多存活{@code ttl}；
+ * 重量由调用方给定的{@code weigher}估算，一般是值序列化后的字节数，单个超过{@code maxWeight}的值只保存在L2。
+ * 本节点写入或删除时通过{@link NearCacheInvalidator}通知其他节点删除各自的L1。<br/>
+ * L1直接保存对象引用，调用方不应修改从缓存中得到的对象。
+ */
+public class NearCache implements Cache {
+
+    private final Cache delegate;
+    private final NearCacheInvalidator invalidator;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<Object> weigher;
+    private final long ttl;
+    //key -> 本地条目，按访问顺序排列
+    private final LinkedHashMap<String, LocalEntry> local;
+    //本地条目的总重量，由local的锁保护
+    private long weight;
+
+    /**
+     * 只按条目数限制的L1
+     *
+     * @param delegate    redis缓存
+     * @param invalidator 失效通知
+     * @param maxEntries  L1最大条目数
+     * @param ttl         L1条目的存活时间(ms)
+     */
+    public NearCache(@NotNull Cache delegate, @NotNull NearCacheInvalidator invalidator, int maxEntries, long ttl) {
+        this(delegate, invalidator, maxEntries, Long.MAX_VALUE, value -> 0, ttl);
+    }
+
+    /**
+     * @param delegate    redis缓存
+     * @param invalidator 失效通知
+     * @param maxEntries  L1最大条目数
+     * @param maxWeight   L1最大总重量
+     * @param weigher     估算值的重量，值可能为null
+     * @param ttl         L1条目的存活时间(ms)
+     */
+    public NearCache(@NotNull Cache delegate, @NotNull NearCacheInvalidator invalidator, int maxEntries, long maxWeight, @NotNull ToLongFunction<Object> weigher, long ttl) {
+        this.delegate = delegate;
+        this.invalidator = invalidator;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttl = ttl;
+        this.local = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                if (size() > NearCache.this.maxEntries) {
+                    weight -= eldest.getValue().weight;
+                    return true;
+                }
+                return false;
+            }
+        };
+        invalidator.register(this);
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @NotNull
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Nullable
+    @Override
+    public ValueWrapper get(@NotNull Object key) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = getLocal(localKey);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        wrapper = delegate.get(key);
+        if (wrapper != null) {
+            putLocal(localKey, wrapper);
+        }
+        return wrapper;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Object key, @Nullable Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Object key, @NotNull Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = getLocal(localKey);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = delegate.get(key, valueLoader);
+        putLocal(localKey, () -> value);
+        return value;
+    }
+
+    @Override
+    public void put(@NotNull Object key, @Nullable Object value) {
+        delegate.put(key, value);
+        String localKey = localKey(key);
+        putLocal(localKey, () -> value);
+        invalidator.evict(getName(), localKey);
+    }
+
+    @Nullable
+    @Override
+    public ValueWrapper putIfAbsent(@NotNull Object key, @Nullable Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        String localKey = localKey(key);
+        if (existing == null) {
+            putLocal(localKey, () -> value);
+            invalidator.evict(getName(), localKey);
+        } else {
+            putLocal(localKey, existing);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(@NotNull Object key) {
+        delegate.evict(key);
+        String localKey = localKey(key);
+        evictLocal(localKey);
+        invalidator.evict(getName(), localKey);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        clearLocal();
+        invalidator.clear(getName());
+    }
+
+    //----local------------------------------------------------
+
+    @Nullable
+    private ValueWrapper getLocal(@NotNull String key) {
+        synchronized (local) {
+            LocalEntry entry = local.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt <= System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+            return entry.wrapper;
+        }
+    }
+
+    private void putLocal(@NotNull String key, @NotNull ValueWrapper wrapper) {
+        //在锁外估算重量，估算可能要序列化
+        long entryWeight = weigher.applyAsLong(wrapper.get());
+        synchronized (local) {
+            if (entryWeight > maxWeight) {
+                //太大的值不放进L1，同时删除旧的条目，避免读到旧值
+                remove(key);
+                return;
+            }
+            LocalEntry previous = local.put(key, new LocalEntry(wrapper, System.currentTimeMillis() + ttl, entryWeight));
+            weight += entryWeight - (previous != null ? previous.weight : 0);
+            //按访问顺序从最久未访问的开始淘汰，直到总重量不超过上限
+            Iterator<LocalEntry> eldest = local.values().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().weight;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * 删除本地条目，收到其他节点的失效通知时调用
+     */
+    void evictLocal(@NotNull String key) {
+        synchronized (local) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 清空本地条目，收到其他节点的清空通知或者通知订阅中断时调用
+     */
+    void clearLocal() {
+        synchronized (local) {
+            local.clear();
+            weight = 0;
+        }
+    }
+
+    //调用方持有local的锁
+    private void remove(@NotNull String key) {
+        LocalEntry removed = local.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    //redis缓存的key同样是转为String后的结果
+    @NotNull
+    private static String localKey(@NotNull Object key) {
+        return String.valueOf(key);
+    }
+
+    //本地条目
+    private static final class LocalEntry {
+        private final ValueWrapper wrapper;
+        private final long expireAt;
+        private final long weight;
+
+        private LocalEntry(ValueWrapper wrapper, long expireAt, long weight) {
+            this.wrapper = wrapper;
+            this.expireAt = expireAt;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package dev.yxy.reactive.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 二级缓存的失效通知<br/>
+ * 节点写入或删除缓存后向{@link #EVICT_CHANNEL}或{@link #CLEAR_CHANNEL}发布消息，消息内容为节点ID和key，
+ * 其他节点收到后删除各自{@link NearCache}中的本地条目，自己发出的消息忽略。<br/>
+ * 与{@link dev.yxy.reactive.util.LockWaitQueue}共享同一个pub/sub连接；
+ * 订阅中断期间的通知会丢失，所以每次(重新)订阅时清空所有本地条目。
+ */
+@Component
+public class NearCacheInvalidator {
+    private static final Logger logger = LoggerFactory.getLogger(NearCacheInvalidator.class);
+
+    //删除单个key的频道前缀
+    public static final String EVICT_CHANNEL = "NEAR-CACHE:EVICT";
+    //清空整个缓存的频道前缀
+    public static final String CLEAR_CHANNEL = "NEAR-CACHE:CLEAR";
+
+    //本节点的ID
+    private final String node = UUID.randomUUID().toString();
+    //cacheName -> 二级缓存
+    private final Map<String, NearCache> caches = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private ReactiveRedisMessageListenerContainer reactiveRedisMessageListenerContainer;
+
+    private Disposable subscription;
+
+    @PostConstruct
+    void subscribe() {
+        subscription = reactiveRedisMessageListenerContainer.receive(PatternTopic.of("NEAR-CACHE:*"))
+                .doOnSubscribe(s -> {
+                    logger.info("订阅二级缓存失效通知: [ NEAR-CACHE:* ]");
+                    caches.values().forEach(NearCache::clearLocal);
+                })
+                .doOnError(e -> logger.warn("二级缓存失效通知订阅中断，稍后重试", e))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> receive(message.getChannel(), message.getMessage()));
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * 注册二级缓存，之后才能收到它的失效通知
+     */
+    void register(@NotNull NearCache cache) {
+        caches.put(cache.getName(), cache);
+    }
+
+    /**
+     * 通知其他节点删除key
+     */
+    void evict(@NotNull String cacheName, @NotNull String key) {
+        publish(EVICT_CHANNEL + ":" + cacheName, node + "\n" + key);
+    }
+
+    /**
+     * 通知其他节点清空缓存
+     */
+    void clear(@NotNull String cacheName) {
+        publish(CLEAR_CHANNEL + ":" + cacheName, node + "\n");
+    }
+
+    //异步发布，不阻塞调用方
+    private void publish(@NotNull String channel, @NotNull String message) {
+        reactiveStringRedisTemplate.convertAndSend(channel, message)
+                .subscribe(null, e -> logger.warn("发布二级缓存失效通知[{}]失败", channel, e));
+    }
+
+    private void receive(@NotNull String channel, @NotNull String message) {
+        int split = message.indexOf('\n');
+        if (split < 0 || message.substring(0, split).equals(node)) {
+            return;
+        }
+        String key = message.substring(split + 1);
+        if (channel.startsWith(EVICT_CHANNEL + ":")) {
+            NearCache cache = caches.get(channel.substring(EVICT_CHANNEL.length() + 1));
+            if (cache != null) {
+                cache.evictLocal(key);
+            }
+        } else if (channel.startsWith(CLEAR_CHANNEL + ":")) {
+            NearCache cache = caches.get(channel.substring(CLEAR_CHANNEL.length() + 1));
+            if (cache != null) {
+                cache.clearLocal();
+            }
+        }
+    }
+}
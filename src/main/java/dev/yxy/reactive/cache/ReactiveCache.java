@@ -0,0 +1,106 @@
+package dev.yxy.reactive.cache;
+
+import dev.yxy.reactive.property.RedisProperty;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 响应式缓存操作<br/>
+ * 值用{@link dev.yxy.reactive.util.BinaryRedisSerializer}序列化，读出的是原来的对象。<br/>
+ * 缓存保存在{@link #cacheKey(String, String)}下，与spring cache的key分开，两者的序列化方式可以不同。<br/>
+ * redis出错时只打印日志，直接执行原来的流，与{@link org.springframework.cache.interceptor.CacheErrorHandler}的处理一致。
+ */
+@Component
+public class ReactiveCache {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCache.class);
+
+    @Autowired
+    private RedisProperty redis;
+
+    @Autowired
+    @Qualifier("reactiveBinaryRedisTemplate")
+    private ReactiveRedisTemplate<String, Object> reactiveBinaryRedisTemplate;
+
+    @NotNull
+    public static String cacheKey(@NotNull String cacheName, @NotNull String key) {
+        return "REACTIVE-CACHE:" + cacheName + "::" + key;
+    }
+
+    /**
+     * 缓存Mono的值
+     *
+     * @param cacheName 缓存名
+     * @param key       缓存key
+     * @param ttl       存活时间，为null时使用reactive.redis.cache-ttl
+     * @param loader    未命中时执行的流
+     * @return 缓存的值或者loader的值
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> cache(@NotNull String cacheName, @NotNull String key, Duration ttl, @NotNull Supplier<Mono<T>> loader) {
+        String cacheKey = cacheKey(cacheName, key);
+        return get(cacheKey)
+                .map(value -> (T) value)
+                .switchIfEmpty(Mono.defer(() -> loader.get().flatMap(value -> put(cacheKey, value, ttl).thenReturn(value))));
+    }
+
+    /**
+     * 缓存Flux的所有元素
+     *
+     * @param cacheName 缓存名
+     * @param key       缓存key
+     * @param ttl       存活时间，为null时使用reactive.redis.cache-ttl
+     * @param loader    未命中时执行的流
+     * @return 缓存的元素或者loader的元素
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> cacheMany(@NotNull String cacheName, @NotNull String key, Duration ttl, @NotNull Supplier<Flux<T>> loader) {
+        String cacheKey = cacheKey(cacheName, key);
+        return get(cacheKey)
+                .map(value -> (List<T>) value)
+                .switchIfEmpty(Mono.defer(() -> loader.get().collectList().flatMap(list -> put(cacheKey, list, ttl).thenReturn(list))))
+                .flatMapIterable(list -> list);
+    }
+
+    /**
+     * 删除缓存
+     *
+     * @param cacheName 缓存名
+     * @param key       缓存key
+     * @return 是否删除了缓存
+     */
+    @NotNull
+    public Mono<Boolean> evict(@NotNull String cacheName, @NotNull String key) {
+        return reactiveBinaryRedisTemplate.delete(cacheKey(cacheName, key)).map(count -> count > 0);
+    }
+
+    @NotNull
+    private Mono<Object> get(@NotNull String cacheKey) {
+        return reactiveBinaryRedisTemplate.opsForValue().get(cacheKey)
+                .onErrorResume(e -> {
+                    logger.error("Reactive cache get error：key -> [{}]", cacheKey, e);
+                    return Mono.empty();
+                });
+    }
+
+    @NotNull
+    private Mono<Boolean> put(@NotNull String cacheKey, @NotNull Object value, Duration ttl) {
+        return reactiveBinaryRedisTemplate.opsForValue().set(cacheKey, value, ttl != null ? ttl : redis.getCacheTtl())
+                .onErrorResume(e -> {
+                    logger.error("Reactive cache put error：key -> [{}]", cacheKey, e);
+                    return Mono.just(false);
+                });
+    }
+}
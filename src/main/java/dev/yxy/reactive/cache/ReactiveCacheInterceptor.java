@@ -0,0 +1,97 @@
+package dev.yxy.reactive.cache;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ReactiveCacheable}的拦截器<br/>
+ * 在调用方订阅时才计算key和访问redis，方法本身只在未命中时调用。
+ */
+public class ReactiveCacheInterceptor implements MethodInterceptor {
+
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    //SpEL -> 解析后的表达式
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private final ObjectProvider<ReactiveCache> reactiveCache;
+
+    public ReactiveCacheInterceptor(@NotNull ObjectProvider<ReactiveCache> reactiveCache) {
+        this.reactiveCache = reactiveCache;
+    }
+
+    @Override
+    public Object invoke(@NotNull MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Class<?> returnType = method.getReturnType();
+        ReactiveCacheable cacheable = AnnotatedElementUtils.findMergedAnnotation(method, ReactiveCacheable.class);
+        if (cacheable == null || !(Mono.class.isAssignableFrom(returnType) || Flux.class.isAssignableFrom(returnType))) {
+            return invocation.proceed();
+        }
+        Duration ttl = cacheable.ttl() > 0 ? Duration.ofSeconds(cacheable.ttl()) : null;
+        if (Mono.class.isAssignableFrom(returnType)) {
+            return Mono.defer(() -> reactiveCache.getObject().cache(cacheable.cacheName(), key(cacheable, invocation), ttl, () -> proceedMono(invocation)));
+        }
+        return Flux.defer(() -> reactiveCache.getObject().cacheMany(cacheable.cacheName(), key(cacheable, invocation), ttl, () -> proceedFlux(invocation)));
+    }
+
+    //未命中时调用原方法，每次订阅都从拦截链的副本继续，避免重复订阅时跳过后面的拦截器
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static Mono<Object> proceedMono(@NotNull MethodInvocation invocation) {
+        try {
+            Mono<Object> result = (Mono<Object>) proceed(invocation);
+            return result != null ? result : Mono.empty();
+        } catch (Throwable e) {
+            return Mono.error(e);
+        }
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static Flux<Object> proceedFlux(@NotNull MethodInvocation invocation) {
+        try {
+            Flux<Object> result = (Flux<Object>) proceed(invocation);
+            return result != null ? result : Flux.empty();
+        } catch (Throwable e) {
+            return Flux.error(e);
+        }
+    }
+
+    private static Object proceed(@NotNull MethodInvocation invocation) throws Throwable {
+        MethodInvocation clone = invocation instanceof ProxyMethodInvocation ? ((ProxyMethodInvocation) invocation).invocableClone() : invocation;
+        return clone.proceed();
+    }
+
+    @NotNull
+    private String key(@NotNull ReactiveCacheable cacheable, @NotNull MethodInvocation invocation) {
+        Object[] args = invocation.getArguments();
+        if (!StringUtils.hasText(cacheable.key())) {
+            return String.valueOf(SimpleKeyGenerator.generateKey(args));
+        }
+        Object target = invocation.getThis();
+        Method method = target != null ? AopUtils.getMostSpecificMethod(invocation.getMethod(), target.getClass()) : invocation.getMethod();
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(target, method, args, DISCOVERER);
+        Expression expression = expressions.computeIfAbsent(cacheable.key(), PARSER::parseExpression);
+        return String.valueOf(expression.getValue(context));
+    }
+}
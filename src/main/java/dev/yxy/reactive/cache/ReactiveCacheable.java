@@ -0,0 +1,30 @@
+package dev.yxy.reactive.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存返回{@link reactor.core.publisher.Mono}或{@link reactor.core.publisher.Flux}的方法的结果<br/>
+ * 与{@link org.springframework.cache.annotation.Cacheable}不同，缓存的是流发出的值而不是流本身，
+ * 读写redis都通过{@link ReactiveCache}以响应式方式完成，不阻塞调用线程。<br/>
+ * 空的Mono和出错的流不会被缓存；Flux的所有元素收集为一个List缓存。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReactiveCacheable {
+
+    /**
+     * 缓存名
+     */
+    String cacheName();
+
+    /**
+     * 缓存key的SpEL表达式，可以用#参数名或#p0引用参数；为空时用所有参数生成key
+     */
+    String key() default "";
+
+    /**
+     * 存活时间(秒)，不大于0时使用reactive.redis.cache-ttl
+     */
+    long ttl() default 0;
+}
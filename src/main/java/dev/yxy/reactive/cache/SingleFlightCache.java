@@ -0,0 +1,335 @@
+package dev.yxy.reactive.cache;
+
+import dev.yxy.reactive.util.LockUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * 防击穿的缓存装饰<br/>
+ * {@code @Cacheable(sync = true)}未命中时会调用{@link #get(Object, Callable)}，
+ * 同一个key在本进程内只有一个线程执行加载，其他线程等待它的结果；
+ * 给定{@link LockUtil}时，加载前还要获取分布式锁，整个集群只有一个节点执行加载，其他节点等锁后直接读缓存。<br/>
+ * 获取分布式锁超时(或者当前线程已经持有其他分布式锁)时不再等待，直接加载。<br/>
+ * 被装饰的缓存从从节点读取时，拿到锁后的复查要给定读主节点的{@code primary}，否则可能读不到其他节点刚写入的值而重复加载。<br/>
+ * RedisCache自带的sync实现对整个缓存加了同一把锁，不同key之间也会互相阻塞，这里按key区分。<br/>
+ * <br/>
+ * 给定{@link Refresh}时，值以{@link CacheEntry}保存，记录加载耗时和逻辑过期时间：
+ * 读取时按XFetch算法以一定概率提前刷新，加载越慢、越接近过期，提前刷新的概率越大；
+ * 逻辑过期后的陈旧窗口内直接返回旧值，同时在后台刷新。两种情况下调用方都不需要等待加载。<br/>
+ * 陈旧窗口只对{@link #get(Object, Callable)}生效，{@link #get(Object)}读到逻辑过期的值时视为未命中。
+ */
+public class SingleFlightCache implements Cache {
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlightCache.class);
+
+    private final Cache delegate;
+    //拿到锁后复查使用的缓存，读主节点
+    private final Cache primary;
+    private final LockUtil lockUtil;
+    private final long lockTimeOut;
+    private final long lockNum;
+    private final Refresh refresh;
+    //被装饰的缓存是否允许保存null
+    private final boolean allowNullValues;
+    //key -> 正在进行的同步加载
+    private final Map<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    //正在后台刷新的key，刷新可能被跳过，不能让同步加载等待它的结果
+    private final Set<String> refreshes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param delegate    被装饰的缓存
+     * @param lockUtil    分布式锁，为null时只在本进程内合并
+     * @param lockTimeOut 单次等待解锁通知的时间(ms)
+     * @param lockNum     再尝试次数
+     */
+    public SingleFlightCache(@NotNull Cache delegate, @Nullable LockUtil lockUtil, long lockTimeOut, long lockNum) {
+        this(delegate, lockUtil, lockTimeOut, lockNum, null);
+    }
+
+    /**
+     * @param delegate    被装饰的缓存
+     * @param lockUtil    分布式锁，为null时只在本进程内合并
+     * @param lockTimeOut 单次等待解锁通知的时间(ms)
+     * @param lockNum     再尝试次数
+     * @param refresh     提前刷新策略，为null时不使用{@link CacheEntry}
+     */
+    public SingleFlightCache(@NotNull Cache delegate, @Nullable LockUtil lockUtil, long lockTimeOut, long lockNum, @Nullable Refresh refresh) {
+        this(delegate, null, lockUtil, lockTimeOut, lockNum, refresh);
+    }
+
+    /**
+     * @param delegate    被装饰的缓存
+     * @param primary     从主节点读取的同一个缓存，用于拿到锁后的复查，为null时使用delegate
+     * @param lockUtil    分布式锁，为null时只在本进程内合并
+     * @param lockTimeOut 单次等待解锁通知的时间(ms)
+     * @param lockNum     再尝试次数
+     * @param refresh     提前刷新策略，为null时不使用{@link CacheEntry}
+     */
+    public SingleFlightCache(@NotNull Cache delegate, @Nullable Cache primary, @Nullable LockUtil lockUtil, long lockTimeOut, long lockNum, @Nullable Refresh refresh) {
+        this.delegate = delegate;
+        this.primary = primary != null ? primary : delegate;
+        this.lockUtil = lockUtil;
+        this.lockTimeOut = lockTimeOut;
+        this.lockNum = lockNum;
+        this.refresh = refresh;
+        Cache target = delegate instanceof TransactionAwareCacheDecorator ? ((TransactionAwareCacheDecorator) delegate).getTargetCache() : delegate;
+        this.allowNullValues = !(target instanceof AbstractValueAdaptingCache) || ((AbstractValueAdaptingCache) target).isAllowNullValues();
+    }
+
+    @NotNull
+    public static String loadKey(@NotNull String cacheName, @NotNull String key) {
+        return "CACHE-LOAD:" + cacheName + "::" + key;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @NotNull
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    //没有sync的@Cacheable只走这里，逻辑过期的值视为未命中，由调用方重新加载并put，陈旧窗口只留给get(key, valueLoader)
+    @Nullable
+    @Override
+    public ValueWrapper get(@NotNull Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        return wrapper != null && isExpired(wrapper) ? null : unwrap(wrapper);
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Object key, @Nullable Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NotNull Object key, @NotNull Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            Object value = wrapper.get();
+            if (value instanceof CacheEntry) {
+                CacheEntry entry = (CacheEntry) value;
+                if (refresh != null && refresh.shouldRefresh(entry)) {
+                    refreshAsync(key, valueLoader, entry.getExpiry());
+                }
+                return (T) entry.getValue();
+            }
+            return (T) value;
+        }
+        String flightKey = String.valueOf(key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            //已经有线程在加载，等待它的结果
+            return (T) await(key, valueLoader, existing);
+        }
+        try {
+            Object value = load(key, valueLoader, -1);
+            flight.complete(value);
+            return (T) value;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    @Override
+    public void put(@NotNull Object key, @Nullable Object value) {
+        delegate.put(key, wrap(value, 0));
+    }
+
+    @Nullable
+    @Override
+    public ValueWrapper putIfAbsent(@NotNull Object key, @Nullable Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, wrap(value, 0));
+        if (existing != null && isExpired(existing)) {
+            //逻辑过期的值与get一致视为不存在
+            delegate.put(key, wrap(value, 0));
+            return null;
+        }
+        return unwrap(existing);
+    }
+
+    @Override
+    public void evict(@NotNull Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    //在后台刷新，已经有加载在进行时不重复刷新
+    private void refreshAsync(@NotNull Object key, @NotNull Callable<?> valueLoader, long expiry) {
+        String flightKey = String.valueOf(key);
+        if (flights.containsKey(flightKey) || !refreshes.add(flightKey)) {
+            return;
+        }
+        try {
+            refresh.executor.execute(() -> {
+                try {
+                    load(key, valueLoader, expiry);
+                } catch (RuntimeException e) {
+                    logger.warn("后台刷新缓存[{}::{}]失败", getName(), key, e);
+                } finally {
+                    refreshes.remove(flightKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //刷新任务太多时放弃这次刷新，调用方仍然拿到旧值
+            refreshes.remove(flightKey);
+        }
+    }
+
+    /**
+     * 本进程的加载者，需要时先获取分布式锁
+     *
+     * @param expiry 后台刷新时读到的逻辑过期时间，缓存中的值比它新才跳过加载；同步加载时为-1
+     */
+    @Nullable
+    private Object load(@NotNull Object key, @NotNull Callable<?> valueLoader, long expiry) {
+        boolean refreshing = expiry >= 0;
+        if (lockUtil == null) {
+            return loadAndPut(key, valueLoader);
+        }
+        String lockKey = loadKey(getName(), String.valueOf(key));
+        if (!lockUtil.lockTimeOut(lockKey, lockTimeOut, lockNum)) {
+            if (refreshing) {
+                //其他节点正在刷新，跳过这次刷新
+                return null;
+            }
+            logger.warn("获取缓存加载锁[{}]失败，直接加载", lockKey);
+            return loadAndPut(key, valueLoader);
+        }
+        try {
+            //等锁期间其他节点可能已经加载完成，从主节点复查
+            ValueWrapper wrapper = primary.get(key);
+            if (wrapper != null && (!refreshing || expiry(wrapper) > expiry)) {
+                Object value = wrapper.get();
+                return value instanceof CacheEntry ? ((CacheEntry) value).getValue() : value;
+            }
+            return loadAndPut(key, valueLoader);
+        } finally {
+            lockUtil.unlock(lockKey);
+        }
+    }
+
+    @Nullable
+    private Object loadAndPut(@NotNull Object key, @NotNull Callable<?> valueLoader) {
+        long start = System.currentTimeMillis();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        //不缓存null时直接返回，@Cacheable(sync = true)不支持unless
+        if (value != null || allowNullValues) {
+            delegate.put(key, wrap(value, System.currentTimeMillis() - start));
+        }
+        return value;
+    }
+
+    private static boolean isExpired(@NotNull ValueWrapper wrapper) {
+        return System.currentTimeMillis() > expiry(wrapper);
+    }
+
+    //缓存中的值的逻辑过期时间，不是CacheEntry时视为永不过期
+    private static long expiry(@NotNull ValueWrapper wrapper) {
+        Object value = wrapper.get();
+        return value instanceof CacheEntry ? ((CacheEntry) value).getExpiry() : Long.MAX_VALUE;
+    }
+
+    @Nullable
+    private Object wrap(@Nullable Object value, long delta) {
+        //null不装进信封，由被装饰的缓存决定能否保存
+        if (refresh == null || value == null) {
+            return value;
+        }
+        return new CacheEntry(value, delta, System.currentTimeMillis() + refresh.ttl);
+    }
+
+    @Nullable
+    private static ValueWrapper unwrap(@Nullable ValueWrapper wrapper) {
+        if (wrapper != null && wrapper.get() instanceof CacheEntry) {
+            return new SimpleValueWrapper(((CacheEntry) wrapper.get()).getValue());
+        }
+        return wrapper;
+    }
+
+    @Nullable
+    private static Object await(@NotNull Object key, @NotNull Callable<?> valueLoader, @NotNull CompletableFuture<Object> flight) {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * 提前刷新策略
+     */
+    public static final class Refresh {
+        //逻辑存活时间，单位ms
+        private final long ttl;
+        //XFetch的系数，越大越早刷新，0表示不提前刷新
+        private final double beta;
+        //执行后台刷新的线程池
+        private final Executor executor;
+
+        /**
+         * @param ttl      逻辑存活时间(ms)，redis中的存活时间应该再加上陈旧窗口
+         * @param beta     XFetch的系数，1是推荐值，0表示只在逻辑过期后刷新
+         * @param executor 执行后台刷新的线程池
+         */
+        public Refresh(long ttl, double beta, @NotNull Executor executor) {
+            this.ttl = ttl;
+            this.beta = beta;
+            this.executor = executor;
+        }
+
+        //XFetch: now - delta * beta * ln(rand) >= expiry
+        private boolean shouldRefresh(@NotNull CacheEntry entry) {
+            long now = System.currentTimeMillis();
+            if (now >= entry.getExpiry()) {
+                return true;
+            }
+            if (beta <= 0 || entry.getDelta() <= 0) {
+                return false;
+            }
+            double random = 1 - ThreadLocalRandom.current().nextDouble();//(0, 1]
+            return now - entry.getDelta() * beta * Math.log(random) >= entry.getExpiry();
+        }
+    }
+}
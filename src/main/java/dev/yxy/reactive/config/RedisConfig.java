@@ -7,13 +7,37 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.yxy.reactive.cache.CacheGenerations;
+import dev.yxy.reactive.cache.CacheKeyGenerator;
+import dev.yxy.reactive.cache.DecoratingCacheManager;
+import dev.yxy.reactive.cache.GenerationalRedisCacheManager;
+import dev.yxy.reactive.cache.NearCache;
+import dev.yxy.reactive.cache.NearCacheInvalidator;
+import dev.yxy.reactive.cache.ReactiveCache;
+import dev.yxy.reactive.cache.ReactiveCacheInterceptor;
+import dev.yxy.reactive.cache.ReactiveCacheable;
+import dev.yxy.reactive.cache.SingleFlightCache;
 import dev.yxy.reactive.property.RedisProperty;
+import dev.yxy.reactive.session.LazyRedisSessionRepository;
+import dev.yxy.reactive.util.BinaryRedisSerializer;
+import dev.yxy.reactive.util.CompressingRedisSerializer;
 import dev.yxy.reactive.util.CustomRedisSerializer;
+import dev.yxy.reactive.util.LockUtil;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
 import org.springframework.cache.Cache;
@@ -25,25 +49,37 @@ import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.session.config.annotation.web.server.EnableSpringWebSession;
 import org.springframework.session.data.redis.config.annotation.SpringSessionRedisConnectionFactory;
 import org.springframework.session.data.redis.config.annotation.web.http.RedisHttpSessionConfiguration;
-import org.springframework.session.data.redis.config.annotation.web.server.EnableRedisWebSession;
 import org.springframework.session.data.redis.config.annotation.web.server.RedisWebSessionConfiguration;
 
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 /**
@@ -58,6 +94,8 @@ import java.util.TimeZone;
  * <br/>
  * mvc的spring session配置见{@link RedisHttpSessionConfiguration}及其子类<b>RedisSessionConfiguration</b><br/>
  * webflux的spring session配置见{@link RedisWebSessionConfiguration}及其子类<b>RedisReactiveSessionConfiguration</b><br/>
+ * 这里没有使用它，而是用{@link EnableSpringWebSession}配合自己的{@link LazyRedisSessionRepository}，
+ * 属性按需反序列化，只写变化的属性，只读请求不写redis<br/>
  * <br/>
  * LettuceConnectionFactory属于通用配置, 适用于以下类<br/>
  * {@link RedisReactiveAutoConfiguration}<br/>
@@ -68,7 +106,7 @@ import java.util.TimeZone;
 @SuppressWarnings("NullableProblems")
 @Configuration
 @EnableCaching//开启Redis Cache
-@EnableRedisWebSession(maxInactiveIntervalInSeconds = RedisConfig.SESSION_TTL)//开启spring session
+@EnableSpringWebSession//开启spring session，仓库见sessionRepository
 public class RedisConfig extends CachingConfigurerSupport {
     private static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
 
@@ -79,39 +117,97 @@ public class RedisConfig extends CachingConfigurerSupport {
 
     //lettuce连接工厂
     private LettuceConnectionFactory createLettuceConnectionFactory(int database) {
-        //redis Standalone配置
-        RedisStandaloneConfiguration standaloneConfig = new RedisStandaloneConfiguration(redis.getHost(), redis.getPort());
-        standaloneConfig.setDatabase(database);
-        standaloneConfig.setPassword(redis.getPassword());
+        return createLettuceConnectionFactory(database, null, true);
+    }
 
-        //redis cluster配置
-        /*RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(redis.getCluster().getNodes());
-        clusterConfig.setMaxRedirects(redis.getCluster().getMaxRedirects());
-        clusterConfig.setPassword(redis.getPassword());*/
-
-        //连接池配置
-        GenericObjectPoolConfig<RedisConfig> poolConfig = new GenericObjectPoolConfig<>();
-        poolConfig.setMaxIdle(redis.getLettuce().getPool().getMaxIdle());
-        poolConfig.setMinIdle(redis.getLettuce().getPool().getMinIdle());
-        poolConfig.setMaxTotal(redis.getLettuce().getPool().getMaxActive());
-        poolConfig.setMaxWaitMillis(redis.getLettuce().getPool().getMaxWait().toMillis());
-
-        //lettuce客户端连接池配置
-        LettucePoolingClientConfiguration lettuceConfig = LettucePoolingClientConfiguration.builder()
-                .commandTimeout(redis.getTimeout())
-                .shutdownTimeout(redis.getLettuce().getShutdownTimeout())
-                .clientName(redis.getClientName())
-                .poolConfig(poolConfig)
-                .build();
+    /**
+     * lettuce连接工厂<br/>
+     * 配置了cluster.nodes时使用集群，配置了sentinel.master时使用哨兵，否则使用单机<br/>
+     * readFrom只对只读命令生效，写命令和lua脚本仍然发往主节点<br/>
+     * 两种模式下普通命令都走同一个共享连接(shareNativeConnection)，区别在于需要独占连接的命令(阻塞命令、事务、pub/sub)：
+     * 连接池模式从池中借用，池满时等待max-wait；非连接池模式直接新建连接，不会排队
+     *
+     * @param database 数据库，集群模式只有0号库
+     * @param readFrom 读取的节点，为null时只读主节点
+     * @param pooled   是否使用连接池
+     */
+    private LettuceConnectionFactory createLettuceConnectionFactory(int database, ReadFrom readFrom, boolean pooled) {
+        RedisConfiguration redisConfig = createRedisConfiguration(database);
 
-        /*非连接池配置
-        LettuceClientConfiguration lettuceConfig = LettuceClientConfiguration.builder()
-                .commandTimeout(redis.getTimeout())
-                .shutdownTimeout(redis.getLettuce().getShutdownTimeout()).build();*/
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder lettuceBuilder;
+        if (pooled) {
+            //连接池配置
+            GenericObjectPoolConfig<RedisConfig> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxIdle(redis.getLettuce().getPool().getMaxIdle());
+            poolConfig.setMinIdle(redis.getLettuce().getPool().getMinIdle());
+            poolConfig.setMaxTotal(redis.getLettuce().getPool().getMaxActive());
+            poolConfig.setMaxWaitMillis(redis.getLettuce().getPool().getMaxWait().toMillis());
+            //lettuce客户端连接池配置
+            lettuceBuilder = LettucePoolingClientConfiguration.builder().poolConfig(poolConfig);
+        } else {
+            //非连接池配置
+            lettuceBuilder = LettuceClientConfiguration.builder();
+        }
+        lettuceBuilder.commandTimeout(redis.getTimeout())
+                .shutdownTimeout(redis.getLettuce().getShutdownTimeout())
+                .clientName(redis.getClientName());
+        if (readFrom != null) {
+            lettuceBuilder.readFrom(readFrom);
+        }
+        if (redisConfig instanceof RedisClusterConfiguration) {
+            //集群拓扑刷新，节点故障转移或者扩缩容后及时更新路由
+            RedisProperty.Lettuce.Cluster.Refresh refresh = redis.getLettuce().getCluster().getRefresh();
+            ClusterTopologyRefreshOptions.Builder refreshBuilder = ClusterTopologyRefreshOptions.builder();
+            if (refresh.getPeriod() != null) {
+                refreshBuilder.enablePeriodicRefresh(refresh.getPeriod());
+            }
+            if (refresh.isAdaptive()) {
+                refreshBuilder.enableAllAdaptiveRefreshTriggers();
+            }
+            lettuceBuilder.clientOptions(ClusterClientOptions.builder().topologyRefreshOptions(refreshBuilder.build()).build());
+        }
+        LettuceClientConfiguration lettuceConfig = lettuceBuilder.build();
 
         //lettuce连接工厂
         //lettuceConnectionFactory.afterPropertiesSet();
-        return new LettuceConnectionFactory(standaloneConfig, lettuceConfig);
+        if (redisConfig instanceof RedisClusterConfiguration) {
+            return new LettuceConnectionFactory((RedisClusterConfiguration) redisConfig, lettuceConfig);
+        }
+        if (redisConfig instanceof RedisSentinelConfiguration) {
+            return new LettuceConnectionFactory((RedisSentinelConfiguration) redisConfig, lettuceConfig);
+        }
+        return new LettuceConnectionFactory((RedisStandaloneConfiguration) redisConfig, lettuceConfig);
+    }
+
+    //按配置选择拓扑
+    private RedisConfiguration createRedisConfiguration(int database) {
+        RedisProperty.Cluster cluster = redis.getCluster();
+        if (cluster != null && cluster.getNodes() != null && !cluster.getNodes().isEmpty()) {
+            //redis cluster配置
+            if (database != 0) {
+                logger.warn("集群模式只有0号库，忽略database -> [{}]", database);
+            }
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(cluster.getNodes());
+            clusterConfig.setMaxRedirects(cluster.getMaxRedirects() != null ? cluster.getMaxRedirects() : 5);
+            clusterConfig.setPassword(redis.getPassword());
+            return clusterConfig;
+        }
+        RedisProperty.Sentinel sentinel = redis.getSentinel();
+        if (sentinel != null && sentinel.getMaster() != null) {
+            //redis sentinel配置
+            RedisSentinelConfiguration sentinelConfig = new RedisSentinelConfiguration(sentinel.getMaster(), new HashSet<>(sentinel.getNodes()));
+            sentinelConfig.setDatabase(database);
+            sentinelConfig.setPassword(redis.getPassword());
+            if (sentinel.getPassword() != null) {
+                sentinelConfig.setSentinelPassword(sentinel.getPassword());
+            }
+            return sentinelConfig;
+        }
+        //redis Standalone配置
+        RedisStandaloneConfiguration standaloneConfig = new RedisStandaloneConfiguration(redis.getHost(), redis.getPort());
+        standaloneConfig.setDatabase(database);
+        standaloneConfig.setPassword(redis.getPassword());
+        return standaloneConfig;
     }
 
     //redis和reactive redis使用的数据库
@@ -120,15 +216,37 @@ public class RedisConfig extends CachingConfigurerSupport {
         return createLettuceConnectionFactory(redis.getDatabase());
     }
 
+    //优先从从节点读取的连接工厂，从节点不可用时读主节点；复制有延迟，读到的可能是旧值。只在开启replica-reads.cache时创建
+    @Bean(name = {"replicaLettuceConnectionFactory"})
+    @ConditionalOnProperty(prefix = "reactive.redis.replica-reads", name = "cache", havingValue = "true")
+    public LettuceConnectionFactory replicaLettuceConnectionFactory() {
+        return createLettuceConnectionFactory(redis.getDatabase(), ReadFrom.REPLICA_PREFERRED, true);
+    }
+
+    //响应式template使用的连接工厂，lettuce.reactive-shared为true时不使用连接池，阻塞和事务命令仍然使用lettuceConnectionFactory的连接池
+    @Bean(name = {"reactiveLettuceConnectionFactory"})
+    public LettuceConnectionFactory reactiveLettuceConnectionFactory() {
+        return createLettuceConnectionFactory(redis.getDatabase(), null, !redis.getLettuce().isReactiveShared());
+    }
+
+    //命令合并使用的连接工厂，不使用连接池也不共享连接，RedisCommandBatcher从这里取一个独占的连接
+    @Bean(name = {"batchingLettuceConnectionFactory"})
+    @ConditionalOnProperty(prefix = "reactive.redis.batching", name = "enabled", havingValue = "true")
+    public LettuceConnectionFactory batchingLettuceConnectionFactory() {
+        LettuceConnectionFactory factory = createLettuceConnectionFactory(redis.getDatabase(), null, false);
+        factory.setShareNativeConnection(false);
+        return factory;
+    }
+
     @Bean("redisTemplate")
     @Primary
     public RedisTemplate<String, Object> redisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
         template.setConnectionFactory(lettuceConnectionFactory);
         template.setKeySerializer(CustomRedisSerializer.string());//键
-        template.setValueSerializer(CustomRedisSerializer.json());//值
+        template.setValueSerializer(compress(CustomRedisSerializer.json()));//值
         template.setHashKeySerializer(CustomRedisSerializer.string());//value中hash的key
-        template.setHashValueSerializer(CustomRedisSerializer.json());//value中hash的value
+        template.setHashValueSerializer(compress(CustomRedisSerializer.json()));//value中hash的value
         template.setStringSerializer(CustomRedisSerializer.string());//value是String
         return template;
     }
@@ -146,35 +264,86 @@ public class RedisConfig extends CachingConfigurerSupport {
         return template;
     }
 
+    //计数器使用的template，值按十进制数字读写，读出的是Long
+    @Bean("counterRedisTemplate")
+    public RedisTemplate<String, Long> counterRedisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
+        RedisTemplate<String, Long> template = new RedisTemplate<>();
+        template.setConnectionFactory(lettuceConnectionFactory);
+        template.setKeySerializer(CustomRedisSerializer.string());//键
+        template.setValueSerializer(CustomRedisSerializer.counter());//值
+        template.setHashKeySerializer(CustomRedisSerializer.string());//value中hash的key
+        template.setHashValueSerializer(CustomRedisSerializer.counter());//value中hash的value
+        template.setStringSerializer(CustomRedisSerializer.string());//value是String
+        return template;
+    }
+
     @Bean("reactiveRedisTemplate")
     @Primary
-    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(LettuceConnectionFactory reactiveLettuceConnectionFactory) {
         RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext.
                 <String, Object>newSerializationContext(CustomRedisSerializer.string())
-                .value(CustomRedisSerializer.json())
-                .hashValue(CustomRedisSerializer.json())
+                .value(compress(CustomRedisSerializer.json()))
+                .hashValue(compress(CustomRedisSerializer.json()))
                 .string(CustomRedisSerializer.string())
                 .build();
-        return new ReactiveRedisTemplate<>(lettuceConnectionFactory, serializationContext);
+        return new ReactiveRedisTemplate<>(reactiveLettuceConnectionFactory, serializationContext);
     }
 
     @Bean("reactiveStringRedisTemplate")
     @Primary
-    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(LettuceConnectionFactory lettuceConnectionFactory) {
+    public ReactiveStringRedisTemplate reactiveStringRedisTemplate(LettuceConnectionFactory reactiveLettuceConnectionFactory) {
         RedisSerializationContext<String, String> serializationContext = RedisSerializationContext.
                 <String, String>newSerializationContext(CustomRedisSerializer.string())
                 .value(CustomRedisSerializer.string())
                 .hashValue(CustomRedisSerializer.string())
                 .string(CustomRedisSerializer.string())
                 .build();
-        return new ReactiveStringRedisTemplate(lettuceConnectionFactory, serializationContext);
+        return new ReactiveStringRedisTemplate(reactiveLettuceConnectionFactory, serializationContext);
+    }
+
+    //响应式缓存使用的template，值用二进制序列化器，读出的是原来的对象
+    @Bean("reactiveBinaryRedisTemplate")
+    public ReactiveRedisTemplate<String, Object> reactiveBinaryRedisTemplate(LettuceConnectionFactory reactiveLettuceConnectionFactory) {
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext.
+                <String, Object>newSerializationContext(CustomRedisSerializer.string())
+                .value(compress(new BinaryRedisSerializer(getClass().getClassLoader())))
+                .hashValue(compress(new BinaryRedisSerializer(getClass().getClassLoader())))
+                .string(CustomRedisSerializer.string())
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveLettuceConnectionFactory, serializationContext);
+    }
+
+    //只读场景使用的template，与reactiveRedisTemplate的序列化方式相同，读请求优先发往从节点
+    @Bean("reactiveReplicaRedisTemplate")
+    @ConditionalOnProperty(prefix = "reactive.redis.replica-reads", name = "cache", havingValue = "true")
+    public ReactiveRedisTemplate<String, Object> reactiveReplicaRedisTemplate(LettuceConnectionFactory replicaLettuceConnectionFactory) {
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext.
+                <String, Object>newSerializationContext(CustomRedisSerializer.string())
+                .value(compress(CustomRedisSerializer.json()))
+                .hashValue(compress(CustomRedisSerializer.json()))
+                .string(CustomRedisSerializer.string())
+                .build();
+        return new ReactiveRedisTemplate<>(replicaLettuceConnectionFactory, serializationContext);
+    }
+
+    //整个JVM共享一个pub/sub连接，各订阅方在本地分发消息
+    @Bean("reactiveRedisMessageListenerContainer")
+    public ReactiveRedisMessageListenerContainer reactiveRedisMessageListenerContainer(LettuceConnectionFactory reactiveLettuceConnectionFactory) {
+        return new ReactiveRedisMessageListenerContainer(reactiveLettuceConnectionFactory);
     }
 
     //springSession使用的数据库连接工厂
     @SpringSessionRedisConnectionFactory
     @Bean(name = "springSessionRedisConnectionFactory")
     public LettuceConnectionFactory springSessionRedisConnectionFactory() {
-        return createLettuceConnectionFactory(redis.getSessionDatabase());
+        //webflux的spring session只发响应式命令；session需要读到刚写入的值，始终读主节点
+        return createLettuceConnectionFactory(redis.getSessionDatabase(), null, !redis.getLettuce().isReactiveShared());
+    }
+
+    //spring session仓库，存储格式与@EnableRedisWebSession相同
+    @Bean("sessionRepository")
+    public LazyRedisSessionRepository sessionRepository(LettuceConnectionFactory springSessionRedisConnectionFactory) {
+        return new LazyRedisSessionRepository(springSessionRedisConnectionFactory, getClass().getClassLoader(), Duration.ofSeconds(SESSION_TTL), redis.getSessionTouchInterval());
     }
 
     //spring session序列化器
@@ -208,31 +377,156 @@ public class RedisConfig extends CachingConfigurerSupport {
 
     /**
      * Redis Cache Manager
-     * 序列化器配置更改{@link RedisCacheConfiguration#serializeValuesWith}即可
+     * 序列化器配置更改{@link RedisCacheConfiguration#serializeValuesWith}即可<br/>
+     * reactive.redis.caches下可以按缓存名单独配置存活时间、序列化、压缩、本地缓存和是否缓存null<br/>
+     * 清空缓存时进入下一代，见{@link CacheGenerations}<br/>
+     * 开启single-flight时同一个key只有一个调用方加载，见{@link SingleFlightCache}<br/>
+     * 开启near-cache时在redis前面加一层本地缓存，见{@link NearCache}<br/>
+     * 开启replica-reads.cache时读缓存优先发往从节点，防击穿拿到锁后的复查仍然读主节点
      */
     @Bean(name = "cacheManager")
     @Primary
-    public CacheManager createCacheManager(LettuceConnectionFactory lettuceConnectionFactory) {
-        return RedisCacheManager.RedisCacheManagerBuilder
-                .fromConnectionFactory(lettuceConnectionFactory)
-                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(redis.getCacheTtl()))
-                .transactionAware()//Enable synchronize cache put/evict
-                .build();
+    public CacheManager createCacheManager(LettuceConnectionFactory lettuceConnectionFactory, @Qualifier("replicaLettuceConnectionFactory") ObjectProvider<LettuceConnectionFactory> replicaLettuceConnectionFactory, NearCacheInvalidator nearCacheInvalidator, ObjectProvider<LockUtil> lockUtil, CacheGenerations cacheGenerations) {
+        Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+        redis.getCaches().keySet().forEach(cacheName -> configurations.put(cacheName, createCacheConfiguration(resolveCacheSpec(cacheName), cacheGenerations)));
+        RedisCacheConfiguration defaultConfiguration = createCacheConfiguration(resolveCacheSpec(null), cacheGenerations);
+        //只在开启replica-reads.cache时存在
+        LettuceConnectionFactory replica = replicaLettuceConnectionFactory.getIfAvailable();
+        //allEntries清空缓存时进入下一代，不使用KEYS
+        RedisCacheManager redisCacheManager = new GenerationalRedisCacheManager(
+                RedisCacheWriter.nonLockingRedisCacheWriter(replica != null ? replica : lettuceConnectionFactory),
+                defaultConfiguration,
+                configurations,
+                cacheGenerations);
+        redisCacheManager.setTransactionAware(true);//Enable synchronize cache put/evict
+        RedisProperty.SingleFlight singleFlight = redis.getSingleFlight();
+        RedisProperty.NearCache nearCache = redis.getNearCache();
+        boolean anyNearCache = nearCache.isEnabled() || redis.getCaches().values().stream().anyMatch(spec -> Boolean.TRUE.equals(spec.getNearCache()));
+        if (!singleFlight.isEnabled() && !anyNearCache) {
+            return redisCacheManager;
+        }
+        //从从节点读取时，防击穿的复查使用读主节点的同一组缓存，只读不写，不需要事务
+        RedisCacheManager primaryCacheManager = replica != null
+                ? new GenerationalRedisCacheManager(RedisCacheWriter.nonLockingRedisCacheWriter(lettuceConnectionFactory), defaultConfiguration, configurations, cacheGenerations)
+                : null;
+        if (primaryCacheManager != null) {
+            primaryCacheManager.afterPropertiesSet();
+        }
+        //由内到外: redis -> 防击穿 -> 本地一级缓存
+        return new DecoratingCacheManager(redisCacheManager, cache -> {
+            RedisProperty.CacheSpec spec = resolveCacheSpec(cache.getName());
+            Cache decorated = cache;
+            if (singleFlight.isEnabled()) {
+                //单次等待解锁通知500ms，超过lockWait后放弃
+                long num = Math.max(singleFlight.getLockWait().toMillis() / 500 - 1, 0);
+                SingleFlightCache.Refresh refresh = isRefresh(spec) ? new SingleFlightCache.Refresh(spec.getTtl().toMillis(), singleFlight.getBeta(), cacheRefreshExecutor()) : null;
+                Cache primary = primaryCacheManager != null ? primaryCacheManager.getCache(cache.getName()) : null;
+                decorated = new SingleFlightCache(decorated, primary, singleFlight.isDistributed() ? lockUtil.getObject() : null, 500, num, refresh);
+            }
+            if (spec.getNearCache()) {
+                //按缓存codec序列化后的字节数计算本地条目的大小
+                RedisSerializer<Object> weigher = createValueSerializer(spec.getCodec());
+                decorated = new NearCache(decorated, nearCacheInvalidator, spec.getMaxEntries(), spec.getMaxWeight().toBytes(),
+                        value -> {
+                            byte[] serialized = weigher.serialize(value);
+                            return serialized != null ? serialized.length : 0;
+                        },
+                        nearCache.getTtl().toMillis());
+            }
+            return decorated;
+        });
+    }
+
+    //按缓存名合并单独配置和全局配置，cacheName为null时返回全局配置
+    private RedisProperty.CacheSpec resolveCacheSpec(String cacheName) {
+        RedisProperty.CacheSpec spec = cacheName != null ? redis.getCaches().get(cacheName) : null;
+        if (spec == null) {
+            spec = new RedisProperty.CacheSpec();
+        }
+        RedisProperty.CacheSpec resolved = new RedisProperty.CacheSpec();
+        resolved.setTtl(spec.getTtl() != null ? spec.getTtl() : redis.getCacheTtl());
+        resolved.setMaxEntries(spec.getMaxEntries() != null ? spec.getMaxEntries() : redis.getNearCache().getMaxEntries());
+        resolved.setMaxWeight(spec.getMaxWeight() != null ? spec.getMaxWeight() : redis.getNearCache().getMaxWeight());
+        resolved.setCodec(spec.getCodec() != null ? spec.getCodec() : redis.getCacheCodec());
+        resolved.setCompression(spec.getCompression() != null ? spec.getCompression() : redis.getCompression().isEnabled());
+        resolved.setNearCache(spec.getNearCache() != null ? spec.getNearCache() : redis.getNearCache().isEnabled());
+        resolved.setCacheNulls(spec.getCacheNulls() != null ? spec.getCacheNulls() : true);
+        return resolved;
+    }
+
+    //单个缓存的redis配置
+    private RedisCacheConfiguration createCacheConfiguration(RedisProperty.CacheSpec spec, CacheGenerations cacheGenerations) {
+        RedisSerializer<Object> serializer = createValueSerializer(spec.getCodec());
+        RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig()
+                //提前刷新时redis中多保存一个陈旧窗口
+                .entryTtl(isRefresh(spec) ? spec.getTtl().plus(redis.getSingleFlight().getStaleWindow()) : spec.getTtl())
+                .computePrefixWith(cacheGenerations)
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(compress(serializer, spec.getCompression())));
+        return spec.getCacheNulls() ? configuration : configuration.disableCachingNullValues();
+    }
+
+    //是否提前刷新，json编码读出的是字符串，无法还原CacheEntry
+    private boolean isRefresh(RedisProperty.CacheSpec spec) {
+        RedisProperty.SingleFlight singleFlight = redis.getSingleFlight();
+        return singleFlight.isEnabled() && singleFlight.isRefresh() && spec.getCodec() != RedisProperty.Codec.JSON;
+    }
+
+    //缓存后台刷新的线程池，队列满时放弃刷新，调用方继续使用旧值
+    @Bean("cacheRefreshExecutor")
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        int threads = redis.getSingleFlight().getRefreshThreads();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 64);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    //缓存值的序列化器
+    private RedisSerializer<Object> createValueSerializer(RedisProperty.Codec codec) {
+        switch (codec) {
+            case JSON:
+                return CustomRedisSerializer.json();
+            case BINARY:
+                return new BinaryRedisSerializer(getClass().getClassLoader());
+            default:
+                return RedisSerializer.java(getClass().getClassLoader());
+        }
+    }
+
+    //压缩统计，所有压缩序列化器共享
+    @Bean("compressionMetrics")
+    public CompressingRedisSerializer.Metrics compressionMetrics() {
+        return new CompressingRedisSerializer.Metrics();
+    }
+
+    //开启压缩时给序列化器加上压缩
+    private <T> RedisSerializer<T> compress(RedisSerializer<T> serializer) {
+        return compress(serializer, redis.getCompression().isEnabled());
+    }
+
+    private <T> RedisSerializer<T> compress(RedisSerializer<T> serializer, boolean enabled) {
+        RedisProperty.Compression compression = redis.getCompression();
+        if (!enabled) {
+            return serializer;
+        }
+        return new CompressingRedisSerializer<>(serializer, (int) compression.getThreshold().toBytes(), compression.getLevel(), compressionMetrics());
+    }
+
+    //@ReactiveCacheable的切面，需要是基础设施角色才会被@EnableCaching注册的代理创建器使用
+    @Bean("reactiveCacheAdvisor")
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor reactiveCacheAdvisor(ObjectProvider<ReactiveCache> reactiveCache) {
+        return new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(ReactiveCacheable.class), new ReactiveCacheInterceptor(reactiveCache));
     }
 
     //key生成器
     @Bean
     @Override
     public KeyGenerator keyGenerator() {
-        return (target, method, params) -> {
-            StringBuilder builder = new StringBuilder();
-            builder.append(target.getClass().getSimpleName()).append(".").append(method.getName()).append(":");
-            for (int i = 0; i < params.length - 1; i++) {
-                builder.append(params[i]).append("-");
-            }
-            builder.append(params[params.length - 1]);
-            return builder.toString();
-        };
+        return new CacheKeyGenerator(redis.getCacheKeyMaxLength());
     }
 
     //错误处理
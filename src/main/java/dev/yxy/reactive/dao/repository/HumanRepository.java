@@ -1,9 +1,33 @@
 package dev.yxy.reactive.dao.repository;
 
 import dev.yxy.reactive.model.entity.Human;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
 @Repository
 public interface HumanRepository extends R2dbcRepository<Human, Long> {
+
+    /**
+     * 带锁令牌的更新，已写入的令牌比本次大时不做任何修改
+     *
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("UPDATE human SET name = :name, age = :age, fencing_token = :token WHERE id = :id AND (fencing_token IS NULL OR fencing_token <= :token)")
+    Mono<Integer> updateWithToken(@Param("id") Long id, @Param("name") String name, @Param("age") Integer age, @Param("token") long token);
+
+    /**
+     * 带锁令牌的保存，拒绝锁已过期的旧持有者的写入
+     *
+     * @param human 需要保存的数据，id不能为空
+     * @param token 加锁时获得的令牌
+     * @return 是否写入成功，false表示令牌已过期
+     */
+    default Mono<Boolean> saveWithToken(Human human, long token) {
+        return updateWithToken(human.getId(), human.getName(), human.getAge(), token).map(count -> count > 0);
+    }
 }
@@ -0,0 +1,19 @@
+package dev.yxy.reactive.dao.repository;
+
+import dev.yxy.reactive.model.entity.Person;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link PersonRepository}中无法用派生查询表达的操作
+ */
+public interface PersonRepositoryCustom {
+
+    /**
+     * 带锁令牌的保存，拒绝锁已过期的旧持有者的写入
+     *
+     * @param person 需要保存的数据，id不能为空
+     * @param token  加锁时获得的令牌
+     * @return 是否写入成功，false表示令牌已过期
+     */
+    Mono<Boolean> saveWithToken(Person person, long token);
+}
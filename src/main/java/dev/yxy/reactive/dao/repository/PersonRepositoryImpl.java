@@ -0,0 +1,31 @@
+package dev.yxy.reactive.dao.repository;
+
+import dev.yxy.reactive.model.entity.Person;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link PersonRepositoryCustom}的实现，类名必须是接口名加Impl才能被Spring Data识别为片段
+ */
+public class PersonRepositoryImpl implements PersonRepositoryCustom {
+
+    @Autowired
+    private ReactiveMongoOperations reactiveMongoOperations;
+
+    @Override
+    public Mono<Boolean> saveWithToken(Person person, long token) {
+        //已写入的令牌比本次大时匹配不到文档
+        Query query = Query.query(Criteria.where("id").is(person.getId())
+                .orOperator(Criteria.where("fencingToken").is(null), Criteria.where("fencingToken").lte(token)));
+        Update update = new Update()
+                .set("name", person.getName())
+                .set("age", person.getAge())
+                .set("roles", person.getRoles())
+                .set("fencingToken", token);
+        return reactiveMongoOperations.updateFirst(query, update, Person.class).map(result -> result.getMatchedCount() > 0);
+    }
+}
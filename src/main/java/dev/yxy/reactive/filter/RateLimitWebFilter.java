@@ -0,0 +1,70 @@
+package dev.yxy.reactive.filter;
+
+import dev.yxy.reactive.property.RedisProperty;
+import dev.yxy.reactive.util.ReactiveRateLimiter;
+import dev.yxy.reactive.util.ReactiveSemaphore;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+
+import static dev.yxy.reactive.util.ReactiveRateLimiter.rateLimitKey;
+import static dev.yxy.reactive.util.ReactiveSemaphore.semaphoreKey;
+
+/**
+ * 入口限流，在进入业务代码之前丢弃超出集群容量的请求<br/>
+ * 先经过令牌桶限制速率(429)，再经过信号量限制并发(503)，两者都在整个集群范围内生效。<br/>
+ * 通过reactive.redis.rate-limit.enabled开启
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "reactive.redis.rate-limit", name = "enabled", havingValue = "true")
+public class RateLimitWebFilter implements WebFilter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitWebFilter.class);
+
+    @Autowired
+    private RedisProperty redis;
+
+    @Autowired
+    private ReactiveRateLimiter reactiveRateLimiter;
+
+    @Autowired
+    private ReactiveSemaphore reactiveSemaphore;
+
+    @NotNull
+    @Override
+    public Mono<Void> filter(@NotNull ServerWebExchange exchange, @NotNull WebFilterChain chain) {
+        RedisProperty.RateLimit limit = redis.getRateLimit();
+        String name = Objects.requireNonNullElse(redis.getClientName(), "default");
+        return reactiveRateLimiter.tryAcquire(rateLimitKey(name), limit.getRate(), limit.getCapacity(), limit.getBatch())
+                .flatMap(acquired -> {
+                    if (!acquired) {
+                        return reject(exchange, HttpStatus.TOO_MANY_REQUESTS);
+                    }
+                    if (limit.getConcurrency() <= 0) {
+                        return chain.filter(exchange);
+                    }
+                    return reactiveSemaphore.withPermit(semaphoreKey(name), limit.getConcurrency(), limit.getLease(),
+                            () -> chain.filter(exchange),
+                            () -> reject(exchange, HttpStatus.SERVICE_UNAVAILABLE));
+                });
+    }
+
+    @NotNull
+    private Mono<Void> reject(@NotNull ServerWebExchange exchange, @NotNull HttpStatus status) {
+        logger.debug("限流拒绝请求[{}] -> [{}]", exchange.getRequest().getPath(), status);
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+}
@@ -1,13 +1,17 @@
 package dev.yxy.reactive.handler;
 
+import dev.yxy.reactive.cache.ReactiveCacheable;
 import dev.yxy.reactive.model.entity.Person;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @CacheConfig(cacheNames = "cache")//作用在类上，可以设置整个类的cacheNames，但是会被方法上的替换
@@ -79,6 +83,51 @@ public class CacheHandler {
         return new char[]{'a', 'b', 'c'};
     }
 
+    //sync = true时未命中会调用Cache.get(key, valueLoader)，同一个key只有一个调用方执行方法，见SingleFlightCache
+    //sync = true不能与unless一起用，也只能有一个缓存，所以只用在需要防止击穿的方法上
+    //加载次数
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Cacheable(key = "'single_flight'", sync = true)
+    public int test_single_flight() throws InterruptedException {
+        Thread.sleep(200);//模拟耗时的加载
+        return loads.incrementAndGet();
+    }
+
+    //刷新次数
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    //没有sync，逻辑过期后由get(key)视为未命中重新加载
+    @Cacheable(cacheNames = "refresh", key = "'refresh'")
+    public int test_refresh() {
+        return refreshes.incrementAndGet();
+    }
+
+    //----reactive---------------------------------------------------------------
+
+    //响应式方法的调用次数，只在未命中时增加
+    private final AtomicInteger reactiveLoads = new AtomicInteger();
+
+    public int getReactiveLoads() {
+        return reactiveLoads.get();
+    }
+
+    @ReactiveCacheable(cacheName = "reactive", key = "'mono:' + #id")
+    public Mono<Person> test_mono(String id) {
+        reactiveLoads.incrementAndGet();
+        Person person = new Person();
+        person.setId(id);
+        person.setName("reactive");
+        person.setAge(20);
+        return Mono.just(person);
+    }
+
+    @ReactiveCacheable(cacheName = "reactive", key = "'flux'", ttl = 60)
+    public Flux<Long> test_flux() {
+        reactiveLoads.incrementAndGet();
+        return Flux.just(System.currentTimeMillis(), System.nanoTime());
+    }
+
     //----put--------------------------------------------------------------------
 
     @CachePut(key = "'time'")
@@ -96,6 +145,14 @@ public class CacheHandler {
     public void delete_x() {
     }
 
+    @CacheEvict(key = "'single_flight'", beforeInvocation = true)
+    public void delete_single_flight() {
+    }
+
+    @CacheEvict(cacheNames = "refresh", key = "'refresh'", beforeInvocation = true)
+    public void delete_refresh() {
+    }
+
     //只能删除cacheNames一样的
     @CacheEvict(allEntries = true, beforeInvocation = true)
     public void delete_all() {
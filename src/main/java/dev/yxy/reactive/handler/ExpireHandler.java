@@ -1,35 +1,194 @@
 package dev.yxy.reactive.handler;
 
+import dev.yxy.reactive.util.ScriptRegistry;
+import dev.yxy.reactive.util.SlotUtil;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Collections;
-
-import static dev.yxy.reactive.util.LockUtil.DEFAULT_SECOND;
-import static dev.yxy.reactive.util.LockUtil.LOCK_KEYS;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * 分布式锁的看门狗<br/>
+ * 只给本进程持有的锁续命，不再维护全局的锁Key集合。<br/>
+ * 每把锁在租期的1/3左右(带随机抖动)续期一次，到期的锁分批用renew.lua检查持有者后PEXPIRE，
+ * 所有批次在一次pipeline中用EVALSHA发出，避免单个Lua脚本长时间阻塞Redis。<br/>
+ * 集群模式下一次脚本调用只能访问同一个slot的key，到期的锁先按slot分组再分批。
  * Created by Nuclear on 2021/1/19
  */
 @Component
 public class ExpireHandler {
     private static final Logger logger = LoggerFactory.getLogger(ExpireHandler.class);
 
+    //每批续期的锁数量
+    private static final int BATCH = 100;
+    //续期间隔的抖动比例
+    private static final double JITTER = 0.2;
+
+    //本进程持有的锁
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Autowired
-    private DefaultRedisScript<Boolean> expireScript;
+    @Qualifier("lettuceConnectionFactory")
+    private LettuceConnectionFactory lettuceConnectionFactory;
+
+    @Autowired
+    private DefaultRedisScript<List<Long>> renewScript;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    /**
+     * 登记本进程持有的锁，由看门狗续期
+     *
+     * @param key     互斥key
+     * @param value   分布式唯一值
+     * @param seconds 持有时间
+     */
+    public void hold(@NotNull String key, @NotNull String value, long seconds) {
+        Lease lease = new Lease(key, value, seconds * 1000);
+        leases.remove(lease);
+        leases.add(lease);
+    }
+
+    /**
+     * 锁已释放，不再续期
+     *
+     * @param key   互斥key
+     * @param value 分布式唯一值
+     */
+    public void release(@NotNull String key, @NotNull String value) {
+        leases.remove(new Lease(key, value, 0));
+    }
 
-    //给分布式锁续命
-    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 5000)
+    //给本进程持有的分布式锁续命
+    @Scheduled(fixedDelay = 1000, initialDelay = 5000)
     void expire() {
-        Boolean aBoolean = redisTemplate.execute(expireScript, Collections.singletonList(LOCK_KEYS), DEFAULT_SECOND);
-        logger.trace("延长redis锁寿命结果：{}", aBoolean);
+        long now = System.currentTimeMillis();
+        List<Lease> due = new ArrayList<>();
+        for (Lease lease : leases) {
+            if (lease.renewAt <= now) {
+                due.add(lease);
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<List<Lease>> batches = batches(due);
+        List<Object> results;
+        long start = System.nanoTime();
+        try {
+            results = renew(batches);
+        } catch (RuntimeException e) {
+            if (!ScriptRegistry.isNoScript(e)) {
+                scriptRegistry.record(renewScript, System.nanoTime() - start, true);
+                throw e;
+            }
+            //redis丢失了脚本缓存，重新加载后再试一次
+            logger.warn("续期脚本不存在，重新加载所有脚本");
+            scriptRegistry.reload();
+            results = renew(batches);
+        }
+        scriptRegistry.record(renewScript, System.nanoTime() - start, false);
+        int renewed = 0;
+        for (int b = 0; b < results.size(); b++) {
+            List<?> batch = (List<?>) results.get(b);
+            for (int i = 0; i < batch.size(); i++) {
+                Lease lease = batches.get(b).get(i);
+                if (Objects.equals(batch.get(i), 1L)) {
+                    lease.schedule(now);
+                    renewed++;
+                } else {
+                    //锁已经不属于本进程了，停止续期
+                    leases.remove(lease);
+                    logger.warn("[{}]续期锁[{}]失败，锁已丢失", lease.value, lease.key);
+                }
+            }
+        }
+        logger.trace("延长redis锁寿命结果：{}/{}", renewed, due.size());
+    }
+
+    //每批最多BATCH把锁，集群模式下同一批的锁在同一个slot
+    @NotNull
+    private List<List<Lease>> batches(@NotNull List<Lease> due) {
+        Collection<List<Lease>> groups = lettuceConnectionFactory.isClusterAware()
+                ? SlotUtil.groupBySlot(due, lease -> lease.key)
+                : Collections.singletonList(due);
+        List<List<Lease>> batches = new ArrayList<>();
+        for (List<Lease> group : groups) {
+            for (int from = 0; from < group.size(); from += BATCH) {
+                batches.add(group.subList(from, Math.min(from + BATCH, group.size())));
+            }
+        }
+        return batches;
+    }
+
+    //所有批次在一次pipeline中用EVALSHA发出
+    private List<Object> renew(@NotNull List<List<Lease>> batches) {
+        String sha = renewScript.getSha1();
+        return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<Lease> batch : batches) {
+                byte[][] keysAndArgs = new byte[batch.size() * 3][];
+                for (int i = 0; i < batch.size(); i++) {
+                    Lease lease = batch.get(i);
+                    keysAndArgs[i] = lease.key.getBytes(StandardCharsets.UTF_8);
+                    keysAndArgs[batch.size() + 2 * i] = lease.value.getBytes(StandardCharsets.UTF_8);
+                    keysAndArgs[batch.size() + 2 * i + 1] = String.valueOf(lease.millis).getBytes(StandardCharsets.UTF_8);
+                }
+                connection.evalSha(sha, ReturnType.MULTI, batch.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    //本进程持有的一把锁
+    private static final class Lease {
+        private final String key;
+        private final String value;
+        //租期，单位ms
+        private final long millis;
+        //下次续期的时间
+        private volatile long renewAt;
+
+        private Lease(String key, String value, long millis) {
+            this.key = key;
+            this.value = value;
+            this.millis = millis;
+            schedule(System.currentTimeMillis());
+        }
+
+        //租期的1/3左右续期一次，抖动避免同时加的锁同时续期
+        private void schedule(long now) {
+            double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+            renewAt = now + (long) (millis / 3 * jitter);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Lease lease = (Lease) o;
+            return key.equals(lease.key) && value.equals(lease.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, value);
+        }
     }
 }
@@ -0,0 +1,175 @@
+package dev.yxy.reactive.handler;
+
+import dev.yxy.reactive.util.BatchQueue;
+import dev.yxy.reactive.util.ScriptRegistry;
+import dev.yxy.reactive.util.SlotUtil;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 一次性令牌(验证码、登录票据等)的响应式存储<br/>
+ * 令牌只能被消费一次，消费即删除，由multi_captcha.lua原子地完成查找和删除。<br/>
+ * 同一个{@link #WINDOW}内到达的消费请求会合并为一次脚本调用，最多{@link #BATCH}个，
+ * 登录高峰时不会每个请求都占用一次redis往返。<br/>
+ * 集群模式下一次脚本调用只能访问同一个slot的key，一批请求按slot拆分成多次脚本调用。
+ */
+@Component
+public class OneTimeTokenHandler {
+
+    //合并消费请求的时间窗口
+    private static final Duration WINDOW = Duration.ofMillis(2);
+    //每批最多合并的请求数
+    private static final int BATCH = 128;
+    //同时在途的批次数
+    private static final int CONCURRENCY = 4;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    @Qualifier("reactiveLettuceConnectionFactory")
+    private LettuceConnectionFactory reactiveLettuceConnectionFactory;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private DefaultRedisScript<List<String>> multiCaptchaScript;
+
+    private BatchQueue<String, String> requests;
+
+    @NotNull
+    public static String tokenKey(@NotNull String name) {
+        return "ONE-TIME-TOKEN:" + name;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        requests = new BatchQueue<>("one-time-token", BATCH, WINDOW, CONCURRENCY, this::consumeBatch);
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (requests != null) {
+            requests.dispose();
+        }
+    }
+
+    /**
+     * 发放一次性令牌
+     *
+     * @param key   令牌key
+     * @param value 令牌的值
+     * @param ttl   有效期
+     * @return 是否发放成功
+     */
+    @NotNull
+    public Mono<Boolean> issue(@NotNull String key, @NotNull String value, @NotNull Duration ttl) {
+        return reactiveStringRedisTemplate.opsForValue().set(key, value, ttl);
+    }
+
+    /**
+     * 发放随机的一次性令牌
+     *
+     * @param key 令牌key
+     * @param ttl 有效期
+     * @return 令牌的值，发放失败时为空
+     */
+    @NotNull
+    public Mono<String> issue(@NotNull String key, @NotNull Duration ttl) {
+        String value = UUID.randomUUID().toString().replace("-", "");
+        return issue(key, value, ttl).filter(Boolean::booleanValue).map(ok -> value);
+    }
+
+    /**
+     * 消费一次性令牌，与同一时间窗口内的其他消费请求合并执行
+     *
+     * @param key 令牌key
+     * @return 令牌的值，不存在或已被消费时为空
+     */
+    @NotNull
+    public Mono<String> consume(@NotNull String key) {
+        return requests.submit(key).filter(value -> !value.isEmpty());
+    }
+
+    /**
+     * 消费一次性令牌并校验
+     *
+     * @param key      令牌key
+     * @param expected 期望的值
+     * @return 令牌存在且与期望的值一致
+     */
+    @NotNull
+    public Mono<Boolean> verify(@NotNull String key, @NotNull String expected) {
+        return consume(key).map(expected::equals).defaultIfEmpty(false);
+    }
+
+    /**
+     * 批量消费一次性令牌，直接执行一次脚本
+     *
+     * @param keys 令牌key
+     * @return key -> 令牌的值，不存在或已被消费的key不包含在内
+     */
+    @NotNull
+    public Mono<Map<String, String>> consumeAll(@NotNull Collection<String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        if (list.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return consumeBatch(list)
+                .map(values -> {
+                    Map<String, String> result = new LinkedHashMap<>();
+                    for (int i = 0; i < list.size(); i++) {
+                        String value = values.get(i);
+                        if (!value.isEmpty()) {
+                            result.putIfAbsent(list.get(i), value);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    //一次脚本调用完成一批消费请求，按key的顺序返回令牌的值，不存在的为空串；集群模式下按slot拆分
+    @NotNull
+    private Mono<List<String>> consumeBatch(@NotNull List<String> keys) {
+        if (!reactiveLettuceConnectionFactory.isClusterAware()) {
+            return scriptRegistry.executeReactive(multiCaptchaScript, keys).next();
+        }
+        List<Integer> indexes = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            indexes.add(i);
+        }
+        return Flux.fromIterable(SlotUtil.groupBySlot(indexes, keys::get))
+                .flatMap(group -> {
+                    List<String> part = group.stream().map(keys::get).collect(Collectors.toList());
+                    return scriptRegistry.executeReactive(multiCaptchaScript, part).next().map(values -> Tuples.of(group, values));
+                })
+                .collectList()
+                .map(parts -> {
+                    //合并回原来的顺序
+                    String[] result = new String[keys.size()];
+                    Arrays.fill(result, "");
+                    for (Tuple2<List<Integer>, List<String>> part : parts) {
+                        for (int i = 0; i < part.getT1().size() && i < part.getT2().size(); i++) {
+                            result[part.getT1().get(i)] = part.getT2().get(i);
+                        }
+                    }
+                    return Arrays.asList(result);
+                });
+    }
+}
@@ -20,6 +20,10 @@ public class Human implements Serializable {
     @Column(value = "age")
     private Integer age;
 
+    //最近一次写入携带的锁令牌，已有的表需要执行sql/human_fencing_token.sql
+    @Column(value = "fencing_token")
+    private Long fencingToken;
+
     public Long getId() {
         return id;
     }
@@ -44,6 +48,14 @@ public class Human implements Serializable {
         this.age = age;
     }
 
+    public Long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void setFencingToken(Long fencingToken) {
+        this.fencingToken = fencingToken;
+    }
+
     @Override
     public String toString() {
         return "{"
@@ -53,6 +65,8 @@ public class Human implements Serializable {
                 + name + '\"'
                 + ",\"age\":"
                 + age
+                + ",\"fencingToken\":"
+                + fencingToken
                 + "}";
     }
 }
@@ -25,6 +25,10 @@ public class Person implements Serializable {
     @Field(value = "roles")
     private HashSet<String> roles;
 
+    //最近一次写入携带的锁令牌
+    @Field(value = "fencingToken")
+    private Long fencingToken;
+
     public String getId() {
         return id;
     }
@@ -57,6 +61,14 @@ public class Person implements Serializable {
         this.roles = roles;
     }
 
+    public Long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void setFencingToken(Long fencingToken) {
+        this.fencingToken = fencingToken;
+    }
+
     @Override
     public String toString() {
         return "{"
@@ -68,6 +80,8 @@ public class Person implements Serializable {
                 + age
                 + ",\"roles\":"
                 + roles
+                + ",\"fencingToken\":"
+                + fencingToken
                 + "}";
     }
 }
@@ -2,9 +2,12 @@ package dev.yxy.reactive.property;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "reactive.redis")
 //可以省略此注解
@@ -51,11 +54,31 @@ public class RedisProperty {
      */
     private Duration sessionTimeout = Duration.ofMinutes(30);
 
+    /**
+     * 没有修改session时刷新过期时间的最小间隔，间隔内的只读请求不写redis
+     */
+    private Duration sessionTouchInterval = Duration.ofMinutes(1);
+
     /**
      * 注解缓存的存活时间 @EnableCaching
      */
     private Duration cacheTtl = Duration.ofMinutes(30);
 
+    /**
+     * 注解缓存的值序列化方式
+     */
+    private Codec cacheCodec = Codec.JDK;
+
+    /**
+     * 注解缓存key的最大长度，超过后参数部分使用摘要，不大于0时不使用摘要
+     */
+    private int cacheKeyMaxLength = 128;
+
+    /**
+     * 按缓存名单独配置，没有配置的项使用全局配置
+     */
+    private Map<String, CacheSpec> caches = new LinkedHashMap<>();
+
     /**
      * 集群配置
      */
@@ -66,6 +89,12 @@ public class RedisProperty {
      */
     private Sentinel sentinel;
 
+    /**
+     * 从节点读取配置
+     */
+    @NestedConfigurationProperty
+    private final ReplicaReads replicaReads = new ReplicaReads();
+
     /**
      * lettuce 客户端配置
      */
@@ -78,6 +107,36 @@ public class RedisProperty {
     @NestedConfigurationProperty
     private final Jedis jedis = new Jedis();
 
+    /**
+     * 入口限流配置
+     */
+    @NestedConfigurationProperty
+    private final RateLimit rateLimit = new RateLimit();
+
+    /**
+     * 响应式命令合并发送配置
+     */
+    @NestedConfigurationProperty
+    private final Batching batching = new Batching();
+
+    /**
+     * 值压缩配置
+     */
+    @NestedConfigurationProperty
+    private final Compression compression = new Compression();
+
+    /**
+     * 注解缓存的本地一级缓存配置
+     */
+    @NestedConfigurationProperty
+    private final NearCache nearCache = new NearCache();
+
+    /**
+     * 注解缓存的防击穿配置
+     */
+    @NestedConfigurationProperty
+    private final SingleFlight singleFlight = new SingleFlight();
+
     public String getHost() {
         return host;
     }
@@ -142,6 +201,14 @@ public class RedisProperty {
         this.sessionTimeout = sessionTimeout;
     }
 
+    public Duration getSessionTouchInterval() {
+        return sessionTouchInterval;
+    }
+
+    public void setSessionTouchInterval(Duration sessionTouchInterval) {
+        this.sessionTouchInterval = sessionTouchInterval;
+    }
+
     public Duration getCacheTtl() {
         return cacheTtl;
     }
@@ -150,6 +217,30 @@ public class RedisProperty {
         this.cacheTtl = cacheTtl;
     }
 
+    public Codec getCacheCodec() {
+        return cacheCodec;
+    }
+
+    public void setCacheCodec(Codec cacheCodec) {
+        this.cacheCodec = cacheCodec;
+    }
+
+    public int getCacheKeyMaxLength() {
+        return cacheKeyMaxLength;
+    }
+
+    public void setCacheKeyMaxLength(int cacheKeyMaxLength) {
+        this.cacheKeyMaxLength = cacheKeyMaxLength;
+    }
+
+    public Map<String, CacheSpec> getCaches() {
+        return caches;
+    }
+
+    public void setCaches(Map<String, CacheSpec> caches) {
+        this.caches = caches;
+    }
+
     public Cluster getCluster() {
         return cluster;
     }
@@ -166,6 +257,10 @@ public class RedisProperty {
         this.sentinel = sentinel;
     }
 
+    public ReplicaReads getReplicaReads() {
+        return replicaReads;
+    }
+
     public Lettuce getLettuce() {
         return lettuce;
     }
@@ -174,6 +269,163 @@ public class RedisProperty {
         return jedis;
     }
 
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public Batching getBatching() {
+        return batching;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * 值的序列化方式
+     */
+    public enum Codec {
+        /**
+         * JDK序列化，spring cache的默认方式
+         */
+        JDK,
+        /**
+         * {@link dev.yxy.reactive.util.CustomRedisSerializer}，读出的是JSON字符串
+         */
+        JSON,
+        /**
+         * {@link dev.yxy.reactive.util.BinaryRedisSerializer}，读出的是原来的对象
+         */
+        BINARY
+    }
+
+    /**
+     * 从节点读取配置，只读命令优先发往从节点(ReadFrom.REPLICA_PREFERRED)，写命令仍然发往主节点<br/>
+     * 复制有延迟，刚写入的值可能读不到；spring session需要读到刚写入的值，始终读主节点
+     */
+    public static class ReplicaReads {
+
+        /**
+         * 注解缓存是否从从节点读取<br/>
+         * 刚put或evict之后的读取可能读到旧值(或者读不到)，只适合能接受短暂不一致的缓存；
+         * 防击穿拿到锁后的复查仍然读主节点
+         */
+        private boolean cache = false;
+
+        public boolean isCache() {
+            return cache;
+        }
+
+        public void setCache(boolean cache) {
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * 单个注解缓存的配置，为null的项使用全局配置
+     */
+    public static class CacheSpec {
+
+        /**
+         * 存活时间，默认cache-ttl
+         */
+        private Duration ttl;
+
+        /**
+         * 本地一级缓存的最大条目数，默认near-cache.max-entries
+         */
+        private Integer maxEntries;
+
+        /**
+         * 本地一级缓存的最大总大小，默认near-cache.max-weight
+         */
+        private DataSize maxWeight;
+
+        /**
+         * 值序列化方式，默认cache-codec
+         */
+        private Codec codec;
+
+        /**
+         * 是否压缩，默认compression.enabled
+         */
+        private Boolean compression;
+
+        /**
+         * 是否开启本地一级缓存，默认near-cache.enabled
+         */
+        private Boolean nearCache;
+
+        /**
+         * 是否缓存null，默认缓存，可以防止穿透
+         */
+        private Boolean cacheNulls;
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Integer getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(Integer maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public DataSize getMaxWeight() {
+            return maxWeight;
+        }
+
+        public void setMaxWeight(DataSize maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public Codec getCodec() {
+            return codec;
+        }
+
+        public void setCodec(Codec codec) {
+            this.codec = codec;
+        }
+
+        public Boolean getCompression() {
+            return compression;
+        }
+
+        public void setCompression(Boolean compression) {
+            this.compression = compression;
+        }
+
+        public Boolean getNearCache() {
+            return nearCache;
+        }
+
+        public void setNearCache(Boolean nearCache) {
+            this.nearCache = nearCache;
+        }
+
+        public Boolean getCacheNulls() {
+            return cacheNulls;
+        }
+
+        public void setCacheNulls(Boolean cacheNulls) {
+            this.cacheNulls = cacheNulls;
+        }
+    }
+
     /**
      * Cluster 模式配置
      */
@@ -266,6 +518,11 @@ public class RedisProperty {
          */
         private Pool pool;
 
+        /**
+         * 响应式template是否只使用共享连接而不使用连接池，连接池只留给阻塞和事务命令
+         */
+        private boolean reactiveShared = true;
+
         /**
          * 集群刷新
          */
@@ -287,6 +544,14 @@ public class RedisProperty {
             this.pool = pool;
         }
 
+        public boolean isReactiveShared() {
+            return reactiveShared;
+        }
+
+        public void setReactiveShared(boolean reactiveShared) {
+            this.reactiveShared = reactiveShared;
+        }
+
         public Cluster getCluster() {
             return cluster;
         }
@@ -421,4 +686,346 @@ public class RedisProperty {
             this.timeBetweenEvictionRuns = timeBetweenEvictionRuns;
         }
     }
+
+    /**
+     * 入口限流配置，在WebFilter中对所有请求生效
+     */
+    public static class RateLimit {
+
+        /**
+         * 是否开启限流
+         */
+        private boolean enabled = false;
+
+        /**
+         * 整个集群每秒允许的请求数
+         */
+        private long rate = 1000;
+
+        /**
+         * 令牌桶容量，即允许的突发请求数
+         */
+        private long capacity = 2000;
+
+        /**
+         * 每个进程一次从redis预取的令牌数
+         */
+        private int batch = 20;
+
+        /**
+         * 整个集群同时处理的最大请求数，0表示不限制
+         */
+        private int concurrency = 0;
+
+        /**
+         * 单个请求最长占用并发许可的时间，超时后许可自动归还
+         */
+        private Duration lease = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getRate() {
+            return rate;
+        }
+
+        public void setRate(long rate) {
+            this.rate = rate;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(long capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBatch() {
+            return batch;
+        }
+
+        public void setBatch(int batch) {
+            this.batch = batch;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Duration getLease() {
+            return lease;
+        }
+
+        public void setLease(Duration lease) {
+            this.lease = lease;
+        }
+    }
+
+    /**
+     * 响应式命令合并发送配置，见{@link dev.yxy.reactive.util.RedisCommandBatcher}
+     */
+    public static class Batching {
+
+        /**
+         * 是否合并发送
+         */
+        private boolean enabled = false;
+
+        /**
+         * 合并命令的时间窗口
+         */
+        private Duration window = Duration.ofMillis(1);
+
+        /**
+         * 每批最多合并的命令数
+         */
+        private int maxBatch = 64;
+
+        /**
+         * 同时在途的批次数
+         */
+        private int concurrency = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * 值压缩配置，作用于redisTemplate、reactiveRedisTemplate和注解缓存
+     */
+    public static class Compression {
+
+        /**
+         * 是否开启压缩
+         */
+        private boolean enabled = false;
+
+        /**
+         * 序列化后超过此大小才压缩
+         */
+        private DataSize threshold = DataSize.ofKilobytes(1);
+
+        /**
+         * 压缩级别，1最快，9压缩率最高
+         */
+        private int level = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(DataSize threshold) {
+            this.threshold = threshold;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public void setLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    /**
+     * 本地一级缓存配置，开启后注解缓存先查本地再查redis
+     */
+    public static class NearCache {
+
+        /**
+         * 是否开启本地缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 每个缓存在本地保留的最大条目数
+         */
+        private int maxEntries = 10000;
+
+        /**
+         * 每个缓存在本地保留的值的最大总大小，按值用缓存的codec序列化后(压缩前)的字节数计算
+         */
+        private DataSize maxWeight = DataSize.ofMegabytes(64);
+
+        /**
+         * 本地条目的存活时间，也是收不到失效通知时最长的不一致时间
+         */
+        private Duration ttl = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public DataSize getMaxWeight() {
+            return maxWeight;
+        }
+
+        public void setMaxWeight(DataSize maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * 防击穿配置，作用于@Cacheable(sync = true)
+     */
+    public static class SingleFlight {
+
+        /**
+         * 是否在本进程内合并同一个key的加载
+         */
+        private boolean enabled = true;
+
+        /**
+         * 是否用分布式锁让整个集群只有一个节点加载
+         */
+        private boolean distributed = false;
+
+        /**
+         * 等待分布式锁的最长时间，超时后直接加载
+         */
+        private Duration lockWait = Duration.ofSeconds(2);
+
+        /**
+         * 是否提前在后台刷新快要过期的缓存，json编码的缓存不支持
+         */
+        private boolean refresh = true;
+
+        /**
+         * XFetch的系数，越大越早刷新，0表示只在逻辑过期后刷新
+         */
+        private double beta = 1.0;
+
+        /**
+         * 逻辑过期后继续返回旧值的时间，期间在后台刷新
+         */
+        private Duration staleWindow = Duration.ofMinutes(5);
+
+        /**
+         * 后台刷新的线程数
+         */
+        private int refreshThreads = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isDistributed() {
+            return distributed;
+        }
+
+        public void setDistributed(boolean distributed) {
+            this.distributed = distributed;
+        }
+
+        public Duration getLockWait() {
+            return lockWait;
+        }
+
+        public void setLockWait(Duration lockWait) {
+            this.lockWait = lockWait;
+        }
+
+        public boolean isRefresh() {
+            return refresh;
+        }
+
+        public void setRefresh(boolean refresh) {
+            this.refresh = refresh;
+        }
+
+        public double getBeta() {
+            return beta;
+        }
+
+        public void setBeta(double beta) {
+            this.beta = beta;
+        }
+
+        public Duration getStaleWindow() {
+            return staleWindow;
+        }
+
+        public void setStaleWindow(Duration staleWindow) {
+            this.staleWindow = staleWindow;
+        }
+
+        public int getRefreshThreads() {
+            return refreshThreads;
+        }
+
+        public void setRefreshThreads(int refreshThreads) {
+            this.refreshThreads = refreshThreads;
+        }
+    }
 }
@@ -0,0 +1,370 @@
+package dev.yxy.reactive.session;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.MapSession;
+import org.springframework.session.ReactiveSessionRepository;
+import org.springframework.session.Session;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * 按需反序列化、只写变化的属性的redis session仓库<br/>
+ * 存储格式与{@link org.springframework.session.data.redis.ReactiveRedisSessionRepository}相同
+ * (spring:session:sessions:&lt;id&gt;下的hash，属性字段前缀sessionAttr:，JDK序列化)，两者可以互相替换。<br/>
+ * 与默认实现的区别：<br/>
+ * 1.读取时只反序列化创建时间等元数据，属性第一次被访问时才反序列化；<br/>
+ * 2.保存时只HSET修改过的属性、HDEL删除的属性；<br/>
+ * 3.没有修改任何属性的请求只在距离上次写入超过{@code touchInterval}时才刷新最后访问时间和过期时间，否则不访问redis。
+ * 过期时间因此最多提前{@code touchInterval}。<br/>
+ * 已有的session由session_save.lua一次往返完成HSET、HDEL和过期时间，session已经被删除或者过期时不会重新创建，
+ * 与默认实现一样以"Session was invalidated"失败。<br/>
+ * 和默认的SaveMode.ON_SET_ATTRIBUTE一样，直接修改属性对象的内容不会被保存，需要重新setAttribute。
+ */
+public class LazyRedisSessionRepository implements ReactiveSessionRepository<LazyRedisSessionRepository.LazyRedisSession> {
+
+    public static final String DEFAULT_NAMESPACE = "spring:session";
+
+    private static final String CREATION_TIME = "creationTime";
+    private static final String LAST_ACCESSED_TIME = "lastAccessedTime";
+    private static final String MAX_INACTIVE_INTERVAL = "maxInactiveInterval";
+    private static final String ATTRIBUTE_PREFIX = "sessionAttr:";
+
+    //只更新已经存在的session
+    private static final DefaultRedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SAVE_SCRIPT.setResultType(Long.class);
+        SAVE_SCRIPT.setLocation(new ClassPathResource("redis/session_save.lua"));
+    }
+
+    //hash的值保持原始字节，由session自己决定什么时候反序列化
+    private final ReactiveRedisTemplate<String, byte[]> template;
+    private final RedisSerializer<Object> serializer;
+    private final Duration defaultMaxInactiveInterval;
+    private final Duration touchInterval;
+    private String namespace = DEFAULT_NAMESPACE + ":";
+
+    /**
+     * @param connectionFactory          session使用的连接工厂
+     * @param classLoader                反序列化属性使用的类加载器
+     * @param defaultMaxInactiveInterval 默认的存活时间
+     * @param touchInterval              只读请求刷新过期时间的最小间隔
+     */
+    public LazyRedisSessionRepository(@NotNull ReactiveRedisConnectionFactory connectionFactory, @Nullable ClassLoader classLoader,
+                                      @NotNull Duration defaultMaxInactiveInterval, @NotNull Duration touchInterval) {
+        RedisSerializationContext<String, byte[]> serializationContext = RedisSerializationContext.
+                <String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .hashValue(RedisSerializer.byteArray())
+                .build();
+        this.template = new ReactiveRedisTemplate<>(connectionFactory, serializationContext);
+        this.serializer = RedisSerializer.java(classLoader);
+        this.defaultMaxInactiveInterval = defaultMaxInactiveInterval;
+        this.touchInterval = touchInterval;
+    }
+
+    public void setRedisKeyNamespace(@NotNull String namespace) {
+        this.namespace = namespace + ":";
+    }
+
+    @NotNull
+    @Override
+    public Mono<LazyRedisSession> createSession() {
+        return Mono.fromSupplier(() -> {
+            MapSession session = new MapSession();
+            session.setMaxInactiveInterval(defaultMaxInactiveInterval);
+            return new LazyRedisSession(session.getId(), session.getCreationTime(), session.getLastAccessedTime(), defaultMaxInactiveInterval, Collections.emptyMap(), true);
+        });
+    }
+
+    @NotNull
+    @Override
+    public Mono<Void> save(@NotNull LazyRedisSession session) {
+        if (session.isNew) {
+            return saveAll(session);
+        }
+        return renameIfChanged(session).then(Mono.defer(() -> saveDelta(session)));
+    }
+
+    @NotNull
+    @Override
+    public Mono<LazyRedisSession> findById(@NotNull String id) {
+        ReactiveHashOperations<String, String, byte[]> hashOps = template.opsForHash();
+        return hashOps.entries(sessionKey(id))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .filter(fields -> !fields.isEmpty())
+                .flatMap(fields -> {
+                    LazyRedisSession session = load(id, fields);
+                    if (session.isExpired()) {
+                        return deleteById(id).then(Mono.empty());
+                    }
+                    return Mono.just(session);
+                });
+    }
+
+    @NotNull
+    @Override
+    public Mono<Void> deleteById(@NotNull String id) {
+        return template.delete(sessionKey(id)).then();
+    }
+
+    @NotNull
+    private String sessionKey(@NotNull String id) {
+        return namespace + "sessions:" + id;
+    }
+
+    //新session写入全部字段
+    @NotNull
+    private Mono<Void> saveAll(@NotNull LazyRedisSession session) {
+        Map<String, byte[]> fields = new HashMap<>(session.raw);
+        session.delta.forEach((name, value) -> {
+            if (value != null) {
+                fields.put(ATTRIBUTE_PREFIX + name, serializer.serialize(value));
+            } else {
+                fields.remove(ATTRIBUTE_PREFIX + name);
+            }
+        });
+        fields.put(CREATION_TIME, serializer.serialize(session.creationTime.toEpochMilli()));
+        fields.put(LAST_ACCESSED_TIME, serializer.serialize(session.lastAccessedTime.toEpochMilli()));
+        fields.put(MAX_INACTIVE_INTERVAL, serializer.serialize((int) session.maxInactiveInterval.getSeconds()));
+        String key = sessionKey(session.getId());
+        return template.opsForHash().putAll(key, fields)
+                .then(expire(key, session.maxInactiveInterval))
+                .doOnSuccess(v -> session.saved());
+    }
+
+    //已有的session只写变化的部分，只读请求在touchInterval内不写
+    @NotNull
+    private Mono<Void> saveDelta(@NotNull LazyRedisSession session) {
+        boolean touch = Duration.between(session.storedLastAccessedTime, session.lastAccessedTime).compareTo(touchInterval) >= 0;
+        if (session.delta.isEmpty() && !session.maxInactiveIntervalChanged && !touch) {
+            return Mono.empty();
+        }
+        Map<String, byte[]> fields = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        session.delta.forEach((name, value) -> {
+            if (value != null) {
+                fields.put(ATTRIBUTE_PREFIX + name, serializer.serialize(value));
+            } else {
+                removed.add(ATTRIBUTE_PREFIX + name);
+            }
+        });
+        fields.put(LAST_ACCESSED_TIME, serializer.serialize(session.lastAccessedTime.toEpochMilli()));
+        if (session.maxInactiveIntervalChanged) {
+            fields.put(MAX_INACTIVE_INTERVAL, serializer.serialize((int) session.maxInactiveInterval.getSeconds()));
+        }
+        //参数：存活时间、写入的字段数、字段和值、删除的字段
+        List<byte[]> args = new ArrayList<>(2 + fields.size() * 2 + removed.size());
+        args.add(bytes(String.valueOf(session.maxInactiveInterval.isNegative() ? -1 : session.maxInactiveInterval.toMillis())));
+        args.add(bytes(String.valueOf(fields.size())));
+        fields.forEach((field, value) -> {
+            args.add(bytes(field));
+            args.add(value);
+        });
+        removed.forEach(field -> args.add(bytes(field)));
+        return template.execute(SAVE_SCRIPT, Collections.singletonList(sessionKey(session.getId())), args)
+                .next()
+                .flatMap(updated -> updated == 1L ? Mono.<Void>empty() : Mono.error(new IllegalStateException("Session was invalidated")))
+                .doOnSuccess(v -> session.saved());
+    }
+
+    @NotNull
+    private Mono<Void> renameIfChanged(@NotNull LazyRedisSession session) {
+        if (session.originalId.equals(session.id)) {
+            return Mono.empty();
+        }
+        String originalKey = sessionKey(session.originalId);
+        //session已经不存在时RENAME会报ERR no such key
+        return template.hasKey(originalKey)
+                .flatMap(exists -> exists ? template.rename(originalKey, sessionKey(session.id)) : Mono.error(new IllegalStateException("Session was invalidated")))
+                .doOnSuccess(ok -> session.originalId = session.id)
+                .then();
+    }
+
+    @NotNull
+    private static byte[] bytes(@NotNull String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private Mono<Void> expire(@NotNull String key, @NotNull Duration maxInactiveInterval) {
+        if (maxInactiveInterval.isNegative()) {
+            return template.persist(key).then();
+        }
+        return template.expire(key, maxInactiveInterval).then();
+    }
+
+    //只反序列化元数据，属性保持原始字节
+    @NotNull
+    private LazyRedisSession load(@NotNull String id, @NotNull Map<String, byte[]> fields) {
+        Instant creationTime = Instant.ofEpochMilli(longField(fields, CREATION_TIME));
+        Instant lastAccessedTime = Instant.ofEpochMilli(longField(fields, LAST_ACCESSED_TIME));
+        Object interval = fields.containsKey(MAX_INACTIVE_INTERVAL) ? serializer.deserialize(fields.get(MAX_INACTIVE_INTERVAL)) : null;
+        Duration maxInactiveInterval = interval instanceof Number ? Duration.ofSeconds(((Number) interval).longValue()) : defaultMaxInactiveInterval;
+        Map<String, byte[]> raw = new HashMap<>();
+        fields.forEach((field, value) -> {
+            if (field.startsWith(ATTRIBUTE_PREFIX) && value != null && value.length > 0) {
+                raw.put(field, value);
+            }
+        });
+        return new LazyRedisSession(id, creationTime, lastAccessedTime, maxInactiveInterval, raw, false);
+    }
+
+    private long longField(@NotNull Map<String, byte[]> fields, @NotNull String field) {
+        Object value = fields.containsKey(field) ? serializer.deserialize(fields.get(field)) : null;
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * 属性按需反序列化的session
+     */
+    public final class LazyRedisSession implements Session {
+        private String id;
+        private String originalId;
+        private boolean isNew;
+        private final Instant creationTime;
+        private Instant lastAccessedTime;
+        //redis中保存的最后访问时间
+        private Instant storedLastAccessedTime;
+        private Duration maxInactiveInterval;
+        private boolean maxInactiveIntervalChanged;
+        //sessionAttr:name -> 序列化的属性，还没有被访问过
+        private final Map<String, byte[]> raw;
+        //name -> 已经反序列化的属性
+        private final Map<String, Object> loaded = new HashMap<>();
+        //name -> 修改过的属性，null表示删除
+        private final Map<String, Object> delta = new HashMap<>();
+
+        private LazyRedisSession(String id, Instant creationTime, Instant lastAccessedTime, Duration maxInactiveInterval, Map<String, byte[]> raw, boolean isNew) {
+            this.id = id;
+            this.originalId = id;
+            this.creationTime = creationTime;
+            this.lastAccessedTime = lastAccessedTime;
+            this.storedLastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.raw = new HashMap<>(raw);
+            this.isNew = isNew;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String changeSessionId() {
+            id = UUID.randomUUID().toString();
+            return id;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getAttribute(String attributeName) {
+            if (delta.containsKey(attributeName)) {
+                return (T) delta.get(attributeName);
+            }
+            if (loaded.containsKey(attributeName)) {
+                return (T) loaded.get(attributeName);
+            }
+            byte[] bytes = raw.remove(ATTRIBUTE_PREFIX + attributeName);
+            if (bytes == null) {
+                return null;
+            }
+            Object value = serializer.deserialize(bytes);
+            loaded.put(attributeName, value);
+            return (T) value;
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            Set<String> names = new HashSet<>(loaded.keySet());
+            raw.keySet().forEach(field -> names.add(field.substring(ATTRIBUTE_PREFIX.length())));
+            delta.forEach((name, value) -> {
+                if (value != null) {
+                    names.add(name);
+                } else {
+                    names.remove(name);
+                }
+            });
+            return names;
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            if (attributeValue == null) {
+                removeAttribute(attributeName);
+                return;
+            }
+            raw.remove(ATTRIBUTE_PREFIX + attributeName);
+            loaded.remove(attributeName);
+            delta.put(attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            raw.remove(ATTRIBUTE_PREFIX + attributeName);
+            loaded.remove(attributeName);
+            delta.put(attributeName, null);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return creationTime;
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            this.lastAccessedTime = lastAccessedTime;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            if (!interval.equals(maxInactiveInterval)) {
+                maxInactiveInterval = interval;
+                maxInactiveIntervalChanged = true;
+            }
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return !maxInactiveInterval.isNegative() && Instant.now().minus(maxInactiveInterval).compareTo(lastAccessedTime) >= 0;
+        }
+
+        //保存成功后修改过的属性变为已加载
+        private void saved() {
+            delta.forEach((name, value) -> {
+                if (value != null) {
+                    loaded.put(name, value);
+                }
+            });
+            delta.clear();
+            isNew = false;
+            originalId = id;
+            maxInactiveIntervalChanged = false;
+            storedLastAccessedTime = lastAccessedTime;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 把并发的小请求按时间窗口合并成批处理<br/>
+ * 同一个窗口内到达的请求最多合并maxBatch个，最多concurrency批同时处理，处理结果按请求的顺序对应，结果不够时对应的请求得到空。<br/>
+ * bufferTimeout的定时器不管下游有没有请求都会发出批次，下游的并发占满时会报错并终止整条处理链，
+ * 所以批次先在内存中排队，再交给下游处理。<br/>
+ * 处理链意外终止时，已提交但未完成的请求以异常结束，同时重新订阅一条处理链，之后的请求不受影响。
+ *
+ * @param <T> 请求
+ * @param <R> 结果
+ */
+public class BatchQueue<T, R> implements Disposable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchQueue.class);
+
+    //名字，只用于日志
+    private final String name;
+    private final int maxBatch;
+    private final Duration window;
+    private final int concurrency;
+    //处理一批请求，按请求的顺序返回结果
+    private final Function<List<T>, Mono<List<R>>> handler;
+
+    //当前的处理链
+    private volatile Pipeline pipeline;
+    private volatile boolean disposed;
+
+    /**
+     * @param name        名字，只用于日志
+     * @param maxBatch    每批最多合并的请求数
+     * @param window      合并请求的时间窗口
+     * @param concurrency 同时处理的批次数
+     * @param handler     处理一批请求，按请求的顺序返回结果
+     */
+    public BatchQueue(@NotNull String name, int maxBatch, @NotNull Duration window, int concurrency, @NotNull Function<List<T>, Mono<List<R>>> handler) {
+        this.name = name;
+        this.maxBatch = maxBatch;
+        this.window = window;
+        this.concurrency = concurrency;
+        this.handler = handler;
+        this.pipeline = new Pipeline();
+    }
+
+    /**
+     * 提交一个请求，与同一时间窗口内的其他请求合并处理
+     *
+     * @param item 请求
+     * @return 请求的结果，结果为null时为空
+     */
+    @NotNull
+    public Mono<R> submit(@NotNull T item) {
+        return Mono.defer(() -> {
+            Request<T, R> request = new Request<>(item);
+            pipeline.submit(request);
+            return Mono.fromFuture(request.future);
+        });
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        pipeline.terminate(new IllegalStateException("批处理[" + name + "]已关闭"));
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    //处理链终止，以异常结束未完成的请求，没有关闭时重新订阅
+    private void terminated(@NotNull Pipeline terminated, @Nullable Throwable e) {
+        if (disposed) {
+            return;
+        }
+        logger.error("批处理[{}]意外终止，重新订阅", name, e);
+        if (pipeline == terminated) {
+            pipeline = new Pipeline();
+        }
+        terminated.terminate(new IllegalStateException("批处理[" + name + "]意外终止", e));
+    }
+
+    //处理一批请求，不管成功、失败还是取消，这批请求都会结束
+    @NotNull
+    private Mono<Void> handle(@NotNull List<Request<T, R>> batch) {
+        List<T> items = batch.stream().map(request -> request.item).collect(Collectors.toList());
+        return Mono.defer(() -> handler.apply(items))
+                .defaultIfEmpty(Collections.emptyList())
+                .doOnNext(results -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).future.complete(i < results.size() ? results.get(i) : null);
+                    }
+                    logger.trace("批处理[{}]合并了[{}]个请求", name, batch.size());
+                })
+                .doOnError(e -> {
+                    logger.warn("批处理[{}]失败，共[{}]个请求", name, batch.size(), e);
+                    batch.forEach(request -> request.future.completeExceptionally(e));
+                })
+                .doOnCancel(() -> batch.forEach(request -> request.future.completeExceptionally(new IllegalStateException("批处理[" + name + "]被取消"))))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    //一条处理链，终止后不再接受请求
+    private final class Pipeline {
+        private final FluxSink<Request<T, R>> sink;
+        private final Disposable subscription;
+        //已提交但未完成的请求
+        private final Set<Request<T, R>> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean terminated;
+
+        private Pipeline() {
+            UnicastProcessor<Request<T, R>> processor = UnicastProcessor.create();
+            sink = processor.sink();//sink是串行化的，可以被多个线程同时调用
+            subscription = processor
+                    .bufferTimeout(maxBatch, window)
+                    .onBackpressureBuffer()
+                    .flatMap(BatchQueue.this::handle, concurrency)
+                    .subscribe(null, e -> terminated(this, e), () -> terminated(this, null));
+        }
+
+        private void submit(@NotNull Request<T, R> request) {
+            pending.add(request);
+            request.future.whenComplete((result, e) -> pending.remove(request));
+            sink.next(request);
+            //与terminate同时发生时，请求可能进了已经终止的处理链，这里兜底
+            if (terminated) {
+                request.future.completeExceptionally(new IllegalStateException("批处理[" + name + "]已终止"));
+            }
+        }
+
+        private void terminate(@NotNull Throwable cause) {
+            terminated = true;
+            subscription.dispose();
+            pending.forEach(request -> request.future.completeExceptionally(cause));
+        }
+    }
+
+    //一个等待合并处理的请求
+    private static final class Request<T, R> {
+        private final T item;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Request(T item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.Serializable;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 带类型的二进制序列化器<br/>
+ * 与{@link CustomRedisSerializer}不同，不经过JSON中间结构，反序列化后得到的是原来的对象而不是JSON字符串。<br/>
+ * 每个值以1个字节的类型标记开头，整数使用变长编码，字符串直接按UTF-8写入，全部写入线程复用的缓冲区。<br/>
+ * 普通对象按类的字段结构(缓存在{@link #SCHEMAS}中)依次写入字段值，不写字段名，只写字段结构的指纹，
+ * 类的字段发生变化后旧数据会反序列化失败，对缓存来说相当于未命中；同一次序列化中重复出现的类只写一次类名。<br/>
+ * JDK自带的类型、没有无参构造器或者自定义了readResolve的类型退回到JDK序列化。<br/>
+ * List、Set、Map反序列化为ArrayList、LinkedHashSet、LinkedHashMap，赋值给字段时会转换为字段声明的类型。<br/>
+ * 不支持循环引用。
+ */
+public class BinaryRedisSerializer implements RedisSerializer<Object> {
+    //空数组
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    //类型标记
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte SHORT = 5;
+    private static final byte BYTE = 6;
+    private static final byte CHAR = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte DATE = 11;
+    private static final byte BYTES = 12;
+    private static final byte CHARS = 13;
+    private static final byte ARRAY = 14;
+    private static final byte LIST = 15;
+    private static final byte SET = 16;
+    private static final byte MAP = 17;
+    private static final byte ENUM = 18;
+    private static final byte OBJECT = 19;
+    private static final byte JDK = 20;
+
+    //最大嵌套深度，防止循环引用导致栈溢出
+    private static final int MAX_DEPTH = 64;
+    //线程缓冲区超过此大小后不再保留，避免偶尔的大对象长期占用内存
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    //类 -> 字段结构
+    private static final Map<Class<?>, Schema> SCHEMAS = new ConcurrentHashMap<>();
+    //线程复用的写缓冲区
+    private static final ThreadLocal<Output> OUTPUTS = ThreadLocal.withInitial(Output::new);
+
+    private final ClassLoader classLoader;
+    private final JdkSerializationRedisSerializer jdk;
+
+    public BinaryRedisSerializer() {
+        this(null);
+    }
+
+    public BinaryRedisSerializer(@Nullable ClassLoader classLoader) {
+        this.classLoader = classLoader != null ? classLoader : BinaryRedisSerializer.class.getClassLoader();
+        this.jdk = new JdkSerializationRedisSerializer(this.classLoader);
+    }
+
+    /**
+     * null直接转为空
+     */
+    @NotNull
+    @Override
+    public byte[] serialize(@Nullable Object source) throws SerializationException {
+        if (source == null) {
+            return EMPTY_ARRAY;
+        }
+        Output output = OUTPUTS.get();
+        try {
+            write(output, source, 0);
+            return Arrays.copyOf(output.buf, output.pos);
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException("无法序列化[" + source.getClass().getName() + "]", e);
+        } finally {
+            output.reset();
+        }
+    }
+
+    /**
+     * 空数组或者null直接转为null
+     */
+    @Nullable
+    @Override
+    public Object deserialize(@Nullable byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return read(new Input(bytes), 0);
+        } catch (SerializationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SerializationException("无法反序列化", e);
+        }
+    }
+
+    //----write------------------------------------------------
+
+    private void write(@NotNull Output out, @Nullable Object value, int depth) throws IllegalAccessException {
+        if (depth > MAX_DEPTH) {
+            throw new SerializationException("嵌套过深，可能存在循环引用");
+        }
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeVarLong(Float.floatToIntBits((Float) value) & 0xFFFFFFFFL);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeVarLong(zigZag((Short) value));
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeVarLong((Character) value);
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeVarLong(zigZag(((Date) value).getTime()));
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeVarLong(bytes.length);
+            out.writeBytes(bytes);
+        } else if (value instanceof char[]) {
+            out.writeByte(CHARS);
+            out.writeString(new String((char[]) value));
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            out.writeByte(ARRAY);
+            out.writeClass(value.getClass().getComponentType());
+            out.writeVarLong(length);
+            for (int i = 0; i < length; i++) {
+                write(out, Array.get(value, i), depth + 1);
+            }
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            writeElements(out, (List<?>) value, depth);
+        } else if (value instanceof Set) {
+            out.writeByte(SET);
+            writeElements(out, (Set<?>) value, depth);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), depth + 1);
+                write(out, entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            out.writeClass(((Enum<?>) value).getDeclaringClass());
+            out.writeString(((Enum<?>) value).name());
+        } else {
+            Schema schema = schema(value.getClass());
+            if (schema.jdk) {
+                byte[] bytes = jdk.serialize(value);
+                out.writeByte(JDK);
+                out.writeVarLong(bytes.length);
+                out.writeBytes(bytes);
+                return;
+            }
+            out.writeByte(OBJECT);
+            out.writeClass(schema.type);
+            out.writeFixedInt(schema.fingerprint);
+            for (Field field : schema.fields) {
+                write(out, field.get(value), depth + 1);
+            }
+        }
+    }
+
+    private void writeElements(@NotNull Output out, @NotNull Collection<?> collection, int depth) throws IllegalAccessException {
+        out.writeVarLong(collection.size());
+        for (Object element : collection) {
+            write(out, element, depth + 1);
+        }
+    }
+
+    //----read------------------------------------------------
+
+    @Nullable
+    private Object read(@NotNull Input in, int depth) throws ReflectiveOperationException {
+        if (depth > MAX_DEPTH) {
+            throw new SerializationException("嵌套过深");
+        }
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) unZigZag(in.readVarLong());
+            case LONG:
+                return unZigZag(in.readVarLong());
+            case SHORT:
+                return (short) unZigZag(in.readVarLong());
+            case BYTE:
+                return in.readByte();
+            case CHAR:
+                return (char) in.readVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat((int) in.readVarLong());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readFixedLong());
+            case STRING:
+                return in.readString();
+            case DATE:
+                return new Date(unZigZag(in.readVarLong()));
+            case BYTES:
+                return in.readBytes(in.readLength());
+            case CHARS:
+                return in.readString().toCharArray();
+            case ARRAY: {
+                Class<?> component = in.readClass(classLoader);
+                int length = in.readLength();
+                Object array = Array.newInstance(component, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, read(in, depth + 1));
+                }
+                return array;
+            }
+            case LIST: {
+                int size = in.readLength();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in, depth + 1));
+                }
+                return list;
+            }
+            case SET: {
+                int size = in.readLength();
+                Set<Object> set = new LinkedHashSet<>(capacity(size));
+                for (int i = 0; i < size; i++) {
+                    set.add(read(in, depth + 1));
+                }
+                return set;
+            }
+            case MAP: {
+                int size = in.readLength();
+                Map<Object, Object> map = new LinkedHashMap<>(capacity(size));
+                for (int i = 0; i < size; i++) {
+                    map.put(read(in, depth + 1), read(in, depth + 1));
+                }
+                return map;
+            }
+            case ENUM:
+                return enumValue(in.readClass(classLoader), in.readString());
+            case OBJECT: {
+                Schema schema = schema(in.readClass(classLoader));
+                if (schema.jdk || in.readFixedInt() != schema.fingerprint) {
+                    throw new SerializationException("[" + schema.type.getName() + "]的字段结构已经改变");
+                }
+                Object bean = schema.constructor.newInstance();
+                for (Field field : schema.fields) {
+                    field.set(bean, adapt(read(in, depth + 1), field.getType()));
+                }
+                return bean;
+            }
+            case JDK:
+                return jdk.deserialize(in.readBytes(in.readLength()));
+            default:
+                throw new SerializationException("未知的类型标记[" + tag + "]");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(@NotNull Class<?> type, @NotNull String name) {
+        return Enum.valueOf((Class<? extends Enum>) type, name);
+    }
+
+    //把反序列化得到的集合转换为字段声明的类型
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Object adapt(@Nullable Object value, @NotNull Class<?> type) throws ReflectiveOperationException {
+        if (value == null || type.isPrimitive() || type.isInstance(value)) {
+            return value;
+        }
+        boolean concrete = !type.isInterface() && !Modifier.isAbstract(type.getModifiers());
+        if (value instanceof Collection && Collection.class.isAssignableFrom(type) && concrete) {
+            Collection<Object> collection = (Collection<Object>) type.getDeclaredConstructor().newInstance();
+            collection.addAll((Collection<?>) value);
+            return collection;
+        }
+        if (value instanceof Map && Map.class.isAssignableFrom(type) && concrete) {
+            Map<Object, Object> map = (Map<Object, Object>) type.getDeclaredConstructor().newInstance();
+            map.putAll((Map<?, ?>) value);
+            return map;
+        }
+        return value;
+    }
+
+    //----schema------------------------------------------------
+
+    @NotNull
+    private static Schema schema(@NotNull Class<?> type) {
+        return SCHEMAS.computeIfAbsent(type, Schema::new);
+    }
+
+    //类的字段结构
+    private static final class Schema {
+        private final Class<?> type;
+        private final Field[] fields;
+        private final Constructor<?> constructor;
+        private final int fingerprint;
+        //是否退回到JDK序列化
+        private final boolean jdk;
+
+        private Schema(@NotNull Class<?> type) {
+            this.type = type;
+            Constructor<?> constructor = null;
+            List<Field> fields = new ArrayList<>();
+            boolean jdk = Serializable.class.isAssignableFrom(type) && (isPlatform(type) || hasMethod(type, "readResolve") || hasMethod(type, "writeReplace"));
+            if (!jdk) {
+                try {
+                    constructor = type.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                        for (Field field : c.getDeclaredFields()) {
+                            int modifiers = field.getModifiers();
+                            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                                field.setAccessible(true);
+                                fields.add(field);
+                            }
+                        }
+                    }
+                } catch (NoSuchMethodException | RuntimeException e) {
+                    if (!Serializable.class.isAssignableFrom(type)) {
+                        throw new SerializationException("[" + type.getName() + "]没有无参构造器，也没有实现Serializable", e);
+                    }
+                    jdk = true;
+                    fields.clear();
+                }
+            }
+            //按声明类和字段名排序，保证不同JVM上的顺序一致
+            fields.sort(Comparator.comparing((Field field) -> field.getDeclaringClass().getName()).thenComparing(Field::getName));
+            int fingerprint = 1;
+            for (Field field : fields) {
+                fingerprint = 31 * fingerprint + field.getName().hashCode();
+                fingerprint = 31 * fingerprint + field.getType().getName().hashCode();
+            }
+            this.constructor = constructor;
+            this.fields = fields.toArray(new Field[0]);
+            this.fingerprint = fingerprint;
+            this.jdk = jdk;
+        }
+
+        //JDK自带的类型无法反射访问私有字段
+        private static boolean isPlatform(@NotNull Class<?> type) {
+            String name = type.getName();
+            return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+        }
+
+        private static boolean hasMethod(@NotNull Class<?> type, @NotNull String name) {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod(name);
+                    return true;
+                } catch (NoSuchMethodException ignored) {
+                }
+            }
+            return false;
+        }
+    }
+
+    //----buffer------------------------------------------------
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    //线程复用的写缓冲区
+    private static final class Output {
+        private byte[] buf = new byte[256];
+        private int pos;
+        //本次序列化中已经写过的类，之后只写序号
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+        private void reset() {
+            pos = 0;
+            classes.clear();
+            if (buf.length > MAX_RETAINED) {
+                buf = new byte[256];
+            }
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        private void writeFixedInt(int value) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                buf[pos++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        private void writeFixedLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[pos++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        //先写char数，再按UTF-8写入，代理对合并为4个字节；不成对的代理字符无法用UTF-8表示，单独编码为3个字节
+        private void writeString(String value) {
+            int length = value.length();
+            writeVarLong(length);
+            ensure(length * 3);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        //第一次出现写0和类名，之后写序号+1
+        private void writeClass(Class<?> type) {
+            Integer index = classes.get(type);
+            if (index != null) {
+                writeVarLong(index + 1);
+            } else {
+                classes.put(type, classes.size());
+                writeVarLong(0);
+                writeString(type.getName());
+            }
+        }
+    }
+
+    //读缓冲区
+    private static final class Input {
+        private final byte[] buf;
+        private int pos;
+        //本次反序列化中已经读过的类
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        private Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private byte readByte() {
+            if (pos >= buf.length) {
+                throw new SerializationException("数据不完整");
+            }
+            return buf[pos++];
+        }
+
+        private byte[] readBytes(int n) {
+            if (pos + n > buf.length) {
+                throw new SerializationException("数据不完整");
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("错误的变长整数");
+        }
+
+        private int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > buf.length - pos) {
+                //每个元素至少占一个字节，长度不可能超过剩余的字节数
+                throw new SerializationException("错误的长度[" + length + "]");
+            }
+            return (int) length;
+        }
+
+        private int readFixedInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private long readFixedLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private String readString() {
+            int length = readLength();
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                int b = readByte() & 0xFF;
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if (b < 0xE0) {
+                    chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+                } else if (b < 0xF0) {
+                    chars[i] = (char) (((b & 0x0F) << 12) | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F));
+                } else {
+                    //4个字节对应一个代理对，占两个char
+                    int codePoint = ((b & 0x07) << 18) | ((readByte() & 0x3F) << 12) | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F);
+                    chars[i++] = Character.highSurrogate(codePoint);
+                    chars[i] = Character.lowSurrogate(codePoint);
+                }
+            }
+            return new String(chars);
+        }
+
+        private Class<?> readClass(ClassLoader classLoader) throws ClassNotFoundException {
+            int index = (int) readVarLong();
+            if (index > 0) {
+                if (index > classes.size()) {
+                    throw new SerializationException("错误的类序号[" + index + "]");
+                }
+                return classes.get(index - 1);
+            }
+            String name = readString();
+            Class<?> type = primitive(name);
+            if (type == null) {
+                type = Class.forName(name, false, classLoader);
+            }
+            classes.add(type);
+            return type;
+        }
+
+        @Nullable
+        private static Class<?> primitive(String name) {
+            switch (name) {
+                case "int":
+                    return int.class;
+                case "long":
+                    return long.class;
+                case "short":
+                    return short.class;
+                case "byte":
+                    return byte.class;
+                case "char":
+                    return char.class;
+                case "float":
+                    return float.class;
+                case "double":
+                    return double.class;
+                case "boolean":
+                    return boolean.class;
+                default:
+                    return null;
+            }
+        }
+    }
+}
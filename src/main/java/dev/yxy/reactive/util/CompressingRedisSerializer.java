@@ -0,0 +1,194 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩序列化器，装饰其他序列化器<br/>
+ * 序列化结果超过阈值时用Deflate压缩，压缩后的数据以{@link #MAGIC}开头，后跟4个字节的原始长度；
+ * 未超过阈值或者压缩后没有变小的数据原样写入，因此已有的未压缩数据也能正常读取。<br/>
+ * Deflater和Inflater按线程复用。
+ */
+public class CompressingRedisSerializer<T> implements RedisSerializer<T> {
+    //压缩数据的头部，JSON、数字、JDK序列化和二进制序列化的数据都不会以此开头
+    private static final byte[] MAGIC = {0x1F, 'Z', 0x01};
+    //头部长度，MAGIC加上原始长度
+    private static final int HEADER = MAGIC.length + 4;
+
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final RedisSerializer<T> delegate;
+    private final int threshold;
+    private final ThreadLocal<Deflater> deflaters;
+    private final Metrics metrics;
+
+    /**
+     * @param delegate  被装饰的序列化器
+     * @param threshold 超过此字节数才压缩
+     * @param level     压缩级别，1~9
+     * @param metrics   压缩统计，可以被多个序列化器共享
+     */
+    public CompressingRedisSerializer(@NotNull RedisSerializer<T> delegate, int threshold, int level, @NotNull Metrics metrics) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        this.metrics = metrics;
+    }
+
+    @Nullable
+    @Override
+    public byte[] serialize(@Nullable T source) throws SerializationException {
+        byte[] bytes = delegate.serialize(source);
+        if (bytes == null || bytes.length <= threshold) {
+            return bytes;
+        }
+        Deflater deflater = deflaters.get();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            //压缩后比原始数据还大就没有意义，缓冲区只留到原始长度
+            byte[] compressed = new byte[bytes.length];
+            System.arraycopy(MAGIC, 0, compressed, 0, MAGIC.length);
+            writeInt(compressed, MAGIC.length, bytes.length);
+            int length = HEADER;
+            while (!deflater.finished() && length < compressed.length) {
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            if (!deflater.finished()) {
+                metrics.skipped.increment();
+                return bytes;
+            }
+            metrics.record(bytes.length, length);
+            return Arrays.copyOf(compressed, length);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Nullable
+    @Override
+    public T deserialize(@Nullable byte[] bytes) throws SerializationException {
+        if (!isCompressed(bytes)) {
+            return delegate.deserialize(bytes);
+        }
+        int length = readInt(bytes, MAGIC.length);
+        //Deflate的压缩比不会超过1032:1，超出说明数据损坏
+        if (length < 0 || (long) length > (long) (bytes.length - HEADER) * 1032) {
+            throw new SerializationException("错误的原始长度[" + length + "]");
+        }
+        Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(bytes, HEADER, bytes.length - HEADER);
+            byte[] raw = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new SerializationException("压缩数据不完整");
+            }
+            return delegate.deserialize(raw);
+        } catch (DataFormatException e) {
+            throw new SerializationException("无法解压", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    //是否是压缩后的数据
+    private static boolean isCompressed(@Nullable byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> ((3 - i) * 8));
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 压缩统计
+     */
+    public static final class Metrics {
+        //压缩的次数
+        private final LongAdder compressed = new LongAdder();
+        //超过阈值但压缩后没有变小的次数
+        private final LongAdder skipped = new LongAdder();
+        //压缩前的总字节数
+        private final LongAdder rawBytes = new LongAdder();
+        //压缩后的总字节数
+        private final LongAdder compressedBytes = new LongAdder();
+
+        private void record(int raw, int compressed) {
+            this.compressed.increment();
+            this.rawBytes.add(raw);
+            this.compressedBytes.add(compressed);
+        }
+
+        public long getCompressed() {
+            return compressed.sum();
+        }
+
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        public long getRawBytes() {
+            return rawBytes.sum();
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes.sum();
+        }
+
+        //压缩率，压缩后/压缩前
+        public double getRatio() {
+            long raw = rawBytes.sum();
+            return raw == 0 ? 1 : (double) compressedBytes.sum() / raw;
+        }
+
+        @Override
+        public String toString() {
+            return "{"
+                    + "\"compressed\":"
+                    + getCompressed()
+                    + ",\"skipped\":"
+                    + getSkipped()
+                    + ",\"rawBytes\":"
+                    + getRawBytes()
+                    + ",\"compressedBytes\":"
+                    + getCompressedBytes()
+                    + ",\"ratio\":"
+                    + String.format("%.3f", getRatio())
+                    + "}";
+        }
+    }
+}
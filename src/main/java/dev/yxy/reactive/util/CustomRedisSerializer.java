@@ -10,6 +10,7 @@ import org.springframework.data.redis.serializer.SerializationException;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
 
 public class CustomRedisSerializer<T> implements RedisSerializer<T> {
@@ -19,6 +20,11 @@ public class CustomRedisSerializer<T> implements RedisSerializer<T> {
     private static final Charset CHARSET = StandardCharsets.UTF_8;
     //泛型类型
     private final Class<T> TYPE;
+    //true和false的编码
+    private static final byte[] TRUE_BYTES = "true".getBytes(CHARSET);
+    private static final byte[] FALSE_BYTES = "false".getBytes(CHARSET);
+    //十进制数字的缓冲区，每个线程一个，long最长20个字符
+    private static final ThreadLocal<byte[]> DIGITS = ThreadLocal.withInitial(() -> new byte[20]);
     //JSON配置
     private static final JSONConfig JSON_CONFIG = JSONConfig.create().setIgnoreError(true).setOrder(true).setDateFormat("yyyy-MM-dd HH:mm:ss");
 
@@ -34,14 +40,21 @@ public class CustomRedisSerializer<T> implements RedisSerializer<T> {
         return new CustomRedisSerializer<>(String.class);
     }
 
+    //计数器，INCR写入的十进制数字直接读为Long
+    @NotNull
+    @Contract(" -> new")
+    public static CustomRedisSerializer<Long> counter() {
+        return new CustomRedisSerializer<>(Long.class);
+    }
+
     public CustomRedisSerializer(@NotNull Class<T> TYPE) {
         this.TYPE = TYPE;
     }
 
     /**
      * null直接转为空
-     * CharSequence、Character、Number、Boolean直接转为String
-     * Date获取毫秒数后转为String
+     * Long、Integer、Short、Byte、Date(毫秒数)直接写为十进制数字，Boolean、ASCII的Character直接写入，不经过String
+     * CharSequence、Character、Number直接转为String
      * 其他全部转为Json，如果发生异常，转为String
      */
     @NotNull
@@ -49,10 +62,16 @@ public class CustomRedisSerializer<T> implements RedisSerializer<T> {
     public byte[] serialize(@Nullable Object source) throws SerializationException {
         if (null == source) {
             return EMPTY_ARRAY;
-        } else if (source instanceof CharSequence || source instanceof Character || source instanceof Number || source instanceof Boolean) {
-            return String.valueOf(source).getBytes(CHARSET);
+        } else if (source instanceof Long || source instanceof Integer || source instanceof Short || source instanceof Byte) {
+            return digits(((Number) source).longValue());
         } else if (source instanceof Date) {
-            return String.valueOf(((Date) source).getTime()).getBytes(CHARSET);
+            return digits(((Date) source).getTime());
+        } else if (source instanceof Boolean) {
+            return ((Boolean) source ? TRUE_BYTES : FALSE_BYTES).clone();
+        } else if (source instanceof Character && (Character) source < 0x80) {
+            return new byte[]{(byte) (char) (Character) source};
+        } else if (source instanceof CharSequence || source instanceof Character || source instanceof Number) {
+            return String.valueOf(source).getBytes(CHARSET);
         } else {
             try {
                 return JSONUtil.parse(source, JSON_CONFIG).toJSONString(0).getBytes(CHARSET);
@@ -64,6 +83,7 @@ public class CustomRedisSerializer<T> implements RedisSerializer<T> {
 
     /**
      * 空数组或者null直接转为null，
+     * 泛型类型为Long、Integer、Short、Byte、Date、Boolean、Character时直接从字节解析为对应类型，
      * 其他全部转为String
      */
     @Nullable
@@ -71,8 +91,59 @@ public class CustomRedisSerializer<T> implements RedisSerializer<T> {
     public T deserialize(@Nullable byte[] bytes) throws SerializationException {
         if (bytes == null || bytes.length == 0) {
             return null;
+        } else if (TYPE == Long.class) {
+            return TYPE.cast(parseLong(bytes, Long.MIN_VALUE, Long.MAX_VALUE));
+        } else if (TYPE == Integer.class) {
+            return TYPE.cast((int) parseLong(bytes, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        } else if (TYPE == Short.class) {
+            return TYPE.cast((short) parseLong(bytes, Short.MIN_VALUE, Short.MAX_VALUE));
+        } else if (TYPE == Byte.class) {
+            return TYPE.cast((byte) parseLong(bytes, Byte.MIN_VALUE, Byte.MAX_VALUE));
+        } else if (TYPE == Date.class) {
+            return TYPE.cast(new Date(parseLong(bytes, Long.MIN_VALUE, Long.MAX_VALUE)));
+        } else if (TYPE == Boolean.class) {
+            return TYPE.cast(Arrays.equals(bytes, TRUE_BYTES));
+        } else if (TYPE == Character.class) {
+            return TYPE.cast(bytes.length == 1 && bytes[0] >= 0 ? (char) bytes[0] : new String(bytes, CHARSET).charAt(0));
         } else {
             return TYPE.cast(new String(bytes, CHARSET));
         }
     }
+
+    //把整数按十进制从后往前写入本线程的缓冲区，再复制出刚好够长的数组，不产生中间的String
+    @NotNull
+    private static byte[] digits(long value) {
+        byte[] buffer = DIGITS.get();
+        int position = buffer.length;
+        //按负数计算，才能表示Long.MIN_VALUE
+        long rest = value < 0 ? value : -value;
+        do {
+            buffer[--position] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            buffer[--position] = '-';
+        }
+        return Arrays.copyOfRange(buffer, position, buffer.length);
+    }
+
+    //从十进制数字解析整数，不产生中间的String
+    private static long parseLong(@NotNull byte[] bytes, long min, long max) {
+        boolean negative = bytes[0] == '-';
+        int start = negative || bytes[0] == '+' ? 1 : 0;
+        if (start == bytes.length) {
+            throw new SerializationException("无法解析为整数: " + new String(bytes, CHARSET));
+        }
+        //按负数累加，才能表示Long.MIN_VALUE
+        long limit = negative ? min : -max;
+        long result = 0;
+        for (int i = start; i < bytes.length; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || result < (limit + digit) / 10) {
+                throw new SerializationException("无法解析为整数: " + new String(bytes, CHARSET));
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
 }
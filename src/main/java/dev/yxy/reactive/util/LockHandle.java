@@ -0,0 +1,76 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReactiveLockUtil}加锁成功后返回的锁凭证<br/>
+ * 同一条响应式调用链上的重入共享同一个凭证，由计数器记录重入次数
+ */
+public final class LockHandle {
+
+    //互斥key
+    private final String key;
+    //分布式唯一值
+    private final String value;
+    //持有时间，单位秒
+    private final long seconds;
+    //加锁时获得的令牌，单调递增
+    private final long token;
+    //重入计数器
+    private final AtomicInteger count = new AtomicInteger();
+
+    LockHandle(@NotNull String key, @NotNull String value, long seconds, long token) {
+        this.key = key;
+        this.value = value;
+        this.seconds = seconds;
+        this.token = token;
+    }
+
+    @NotNull
+    public String getKey() {
+        return key;
+    }
+
+    @NotNull
+    public String getValue() {
+        return value;
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * 写入时携带此令牌，存储端拒绝比已写入令牌更小的写入，
+     * 即使锁在操作中途过期被他人获取，旧持有者也无法覆盖新持有者的数据
+     */
+    public long getToken() {
+        return token;
+    }
+
+    //重入，返回重入后的计数
+    int enter() {
+        return count.incrementAndGet();
+    }
+
+    //退出，返回退出前的计数，为0时表示需要真正释放
+    int exit() {
+        return count.getAndUpdate(c -> c > 0 ? c - 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "{"
+                + "\"key\":\""
+                + key + '\"'
+                + ",\"value\":\""
+                + value + '\"'
+                + ",\"token\":"
+                + token
+                + ",\"count\":"
+                + count.get()
+                + "}";
+    }
+}
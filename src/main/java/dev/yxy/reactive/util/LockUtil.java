@@ -1,9 +1,12 @@
 package dev.yxy.reactive.util;
 
+import dev.yxy.reactive.handler.ExpireHandler;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
@@ -11,9 +14,8 @@ import org.springframework.stereotype.Component;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
-import java.util.List;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * 锁的粒度不够细
@@ -23,17 +25,14 @@ public class LockUtil {
     private static final Logger logger = LoggerFactory.getLogger(LockUtil.class);
 
     //本机地址
-    private static final String address;
+    static final String address;
     //默认加锁时间
     public static final long DEFAULT_SECOND = 90;
-    //单次自旋时间，单位ms
+    //单次等待解锁通知的时间，单位ms
     private static final long TIME_OUT = 500;
     //再尝试次数
     private static final long NUM = 3;
 
-    //锁Key的集合
-    public static final String LOCK_KEYS = "LOCK_KEYS";
-
     static {
         String addr;
         try {
@@ -56,13 +55,41 @@ public class LockUtil {
     private static final ThreadLocal<String> value = ThreadLocal.withInitial(LockUtil::unique);
     //重入计数器
     private static final ThreadLocal<Integer> count = ThreadLocal.withInitial(() -> 0);
+    //本次加锁获得的令牌
+    private static final ThreadLocal<Long> token = ThreadLocal.withInitial(() -> 0L);
+    //线程持有的一组key，由lockAll加锁
+    private static final ThreadLocal<List<String>> group = new ThreadLocal<>();
+    //本地锁表，本地竞争者先在这里排队
+    private static final StripedLockTable table = new StripedLockTable(64);
 
     @Autowired
     private StringRedisTemplate redisTemplate;
 
+    @Autowired
+    @Qualifier("lettuceConnectionFactory")
+    private LettuceConnectionFactory lettuceConnectionFactory;
+
+    @Autowired
+    private DefaultRedisScript<Long> lockScript;
+
     @Autowired
     private DefaultRedisScript<Boolean> unlockScript;
 
+    @Autowired
+    private DefaultRedisScript<Long> multiLockScript;
+
+    @Autowired
+    private DefaultRedisScript<Long> multiUnlockScript;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private LockWaitQueue lockWaitQueue;
+
+    @Autowired
+    private ExpireHandler expireHandler;
+
     /**
      * 分布式重入互斥锁
      *
@@ -98,19 +125,33 @@ public class LockUtil {
             redisTemplate.expire(key, Duration.ofSeconds(seconds)); //延长持有时间
             logger.trace("[{}]对锁[{}]计数器增加结果[{}]", value, key, count.get());
             return true;
-        } else if (Objects.equals(local.get(), null)) {//如果是未持有的key，则需要去抢占
-            if (Objects.equals(redisTemplate.opsForValue().setIfAbsent(key, value, Duration.ofSeconds(seconds)), true)) {
-                local.set(key);//设置线程持有key
-                count.set(0);//重置计数器
-                redisTemplate.opsForSet().add(LOCK_KEYS, key);//加入锁Key的集合
-                logger.trace("[{}]加锁[{}]成功", value, key);
-                return true;
-            } else {
-                logger.trace("[{}]加锁[{}]失败", value, key);
+        } else if (Objects.equals(local.get(), null) && group.get() == null) {//如果是未持有的key，则需要去抢占
+            // 先在本地抢占，同一个JVM里每个key同时只有一个线程会访问redis
+            if (!table.tryLock(key)) {
+                logger.trace("[{}]加锁[{}]失败，本地其他线程持有中", value, key);
                 return false;
             }
+            boolean locked = false;
+            try {
+                long fence = acquire(key, value, seconds);
+                if (fence > 0) {
+                    local.set(key);//设置线程持有key
+                    count.set(0);//重置计数器
+                    token.set(fence);//记录令牌
+                    expireHandler.hold(key, value, seconds);//交给看门狗续期
+                    logger.trace("[{}]加锁[{}]成功", value, key);
+                    locked = true;
+                } else {
+                    logger.trace("[{}]加锁[{}]失败", value, key);
+                }
+                return locked;
+            } finally {
+                if (!locked) {
+                    table.unlock(key);
+                }
+            }
         } else {
-            logger.warn("raw key [{}] your key [{}]", local.get(), key);
+            logger.warn("raw key [{}] raw keys [{}] your key [{}]", local.get(), group.get(), key);
             return false;
         }
     }
@@ -121,7 +162,6 @@ public class LockUtil {
      * @param key 互斥key
      * @return 是否获取成功
      */
-    @Deprecated
     public boolean lockTimeOut(@NotNull String key) {
         return lockTimeOut(key, value.get(), DEFAULT_SECOND, TIME_OUT, NUM);
     }
@@ -130,56 +170,100 @@ public class LockUtil {
      * 分布式重入锁(阻塞，超时返回，多次尝试)
      *
      * @param key     互斥key
-     * @param timeOut 单次自旋时间(ms)
+     * @param timeOut 单次等待解锁通知的时间(ms)
      * @param num     再尝试次数
      * @return 是否获取成功
      */
-    @Deprecated
     public boolean lockTimeOut(@NotNull String key, long timeOut, long num) {
         return lockTimeOut(key, value.get(), DEFAULT_SECOND, timeOut, num);
     }
 
     /**
-     * 分布式重入锁(阻塞，超时返回，多次尝试)
+     * 分布式重入锁(阻塞，超时返回，多次尝试)<br/>
+     * 本地线程先在{@link StripedLockTable}上排队，抢到本地锁后才去redis竞争；
+     * 两个阶段共用一个期限，总的等待时间不超过timeOut * (num + 1)
      *
      * @param key     互斥key
      * @param value   分布式唯一值
      * @param seconds 持有时间
-     * @param timeOut 单次自旋时间(ms)
+     * @param timeOut 单次等待解锁通知的时间(ms)
      * @param num     再尝试次数
      * @return 是否获取成功
      */
-    @Deprecated
     private boolean lockTimeOut(@NotNull String key, @NotNull String value, long seconds, long timeOut, long num) {
-        long times = 0L;
         if (Objects.equals(local.get(), key)) {//判断本线程是否已经持有此key
             count.set(count.get() + 1);//计数器加一
             redisTemplate.expire(key, Duration.ofSeconds(seconds)); //延长持有时间
             logger.trace("[{}]对锁[{}]计数器增加结果[{}]", value, key, count.get());
             return true;
-        } else if (Objects.equals(local.get(), null)) {//如果是未持有的key，则需要去抢占
-            for (; ; ) {
+        } else if (Objects.equals(local.get(), null) && group.get() == null) {//如果是未持有的key，则需要去抢占
+            long deadline = System.currentTimeMillis() + timeOut * (num + 1);
+            // 先在本地排队，同一个JVM里每个key同时只有一个线程会访问redis
+            try {
+                if (!table.tryLock(key, timeOut * (num + 1))) {
+                    logger.trace("[{}]加锁[{}]失败，等待本地其他线程超时", value, key);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.trace("[{}]等待锁[{}]时被中断", value, key);
+                return false;
+            }
+            boolean locked = false;
+            try {
+                locked = lockRemote(key, value, seconds, timeOut, num, deadline);
+                return locked;
+            } finally {
+                if (!locked) {
+                    table.unlock(key);
+                }
+            }
+        } else {
+            logger.warn("raw key [{}] raw keys [{}] your key [{}]", local.get(), group.get(), key);
+            return false;
+        }
+    }
+
+    /**
+     * 在redis上抢占锁，等待期间线程挂起在{@link LockWaitQueue}的解锁通知上，不占用CPU，解锁后立即重新竞争<br/>
+     * 至少尝试一次，之后到达期限或用完再尝试次数就返回
+     *
+     * @param deadline 与本地排队共用的期限
+     */
+    private boolean lockRemote(@NotNull String key, @NotNull String value, long seconds, long timeOut, long num, long deadline) {
+        long times = 0L;
+        for (; ; ) {
+            // 先注册再尝试加锁，避免错过两者之间的解锁通知
+            CompletableFuture<Void> released = lockWaitQueue.register(key);
+            try {
                 // 尝试加锁
-                if (Objects.equals(redisTemplate.opsForValue().setIfAbsent(key, value, Duration.ofSeconds(seconds)), true)) {
+                long fence = acquire(key, value, seconds);
+                if (fence > 0) {
                     local.set(key);//设置线程持有key
                     count.set(0);//重置计数器
-                    redisTemplate.opsForSet().add(LOCK_KEYS, key);//加入锁Key的集合
+                    token.set(fence);//记录令牌
+                    expireHandler.hold(key, value, seconds);//交给看门狗续期
                     logger.trace("[{}]加锁[{}]成功", value, key);
                     return true;
                 }
-                // 如果机会耗尽，则停止尝试
-                if (times >= num) {
+                // 如果机会耗尽或者到达期限，则停止尝试
+                long remaining = deadline - System.currentTimeMillis();
+                if (times >= num || remaining <= 0) {
                     logger.trace("[{}]加锁[{}]失败", value, key);
                     return false;
                 }
-                // 自旋一会，不然反复执行循环会一直失败
-                long threshold = System.currentTimeMillis() + timeOut;
-                while (System.currentTimeMillis() < threshold) ;
-                times++;
+                // 挂起等待解锁通知，超时后也再尝试一次，因为锁可能是过期而不是被解锁
+                released.get(Math.min(timeOut, remaining), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException | CancellationException ignored) {
+                logger.trace("[{}]等待锁[{}]的解锁通知超时", value, key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.trace("[{}]等待锁[{}]时被中断", value, key);
+                return false;
+            } finally {
+                lockWaitQueue.unregister(key, released);
             }
-        } else {
-            logger.warn("raw key [{}] your key [{}]", local.get(), key);
-            return false;
+            times++;
         }
     }
 
@@ -207,20 +291,134 @@ public class LockUtil {
             count.set(count.get() - 1);
             logger.trace("[{}]对锁[{}]计数器减少结果[{}]", value.get(), key, count.get());
         } else {
-            // 检查并删除，原子操作
-            boolean result = checkAndDelete(key, value.get());
-            if (result) {
-                logger.info("[{}]删除锁[{}]成功", value.get(), key);
-            } else {
-                // todo 如果删除失败了，应该怎么办呢？
-                logger.warn("[{}]删除锁[{}]失败", value.get(), key);
+            try {
+                // 检查并删除，原子操作
+                boolean result = checkAndDelete(key, value.get());
+                if (result) {
+                    logger.info("[{}]删除锁[{}]成功", value.get(), key);
+                } else {
+                    // todo 如果删除失败了，应该怎么办呢？
+                    logger.warn("[{}]删除锁[{}]失败", value.get(), key);
+                }
+            } finally {
+                // 不管redis是否能删除key，当前线程都不应该再持有key
+                expireHandler.release(key, value.get());
+                local.remove();
+                table.unlock(key);//让本地下一个线程去竞争
             }
-            // 不管redis是否能删除key，当前线程都不应该再持有key
-            local.remove();
             logger.trace("[{}]解锁[{}]成功", value.get(), key);
         }
     }
 
+    /**
+     * 多个key的分布式互斥锁，一次脚本调用原子地全部加锁或全部不加锁<br/>
+     * key会先排序，本地也按顺序抢占，多组有交集的key之间不会死锁。<br/>
+     * 线程持有一组key时不能再加其他锁，需要先{@link #unlockAll()}；这组锁不生成令牌，{@link #fencingToken()}为0<br/>
+     * 集群模式下这组key必须用{@code {hashtag}}放到同一个slot，否则一次脚本调用无法访问
+     *
+     * @param keys 互斥key
+     * @return 是否获取成功
+     * @throws IllegalArgumentException 集群模式下key不在同一个slot
+     */
+    public boolean lockAll(@NotNull Collection<String> keys) {
+        return lockAll(keys, DEFAULT_SECOND);
+    }
+
+    /**
+     * 多个key的分布式互斥锁，一次脚本调用原子地全部加锁或全部不加锁
+     *
+     * @param keys    互斥key
+     * @param seconds 持有时间
+     * @return 是否获取成功
+     * @throws IllegalArgumentException 集群模式下key不在同一个slot
+     */
+    public boolean lockAll(@NotNull Collection<String> keys, long seconds) {
+        String value = LockUtil.value.get();
+        if (lettuceConnectionFactory.isClusterAware() && !SlotUtil.sameSlot(keys)) {
+            throw new IllegalArgumentException("集群模式下一组锁的key必须在同一个slot，请使用{hashtag}：" + keys);
+        }
+        if (local.get() != null || group.get() != null) {
+            logger.warn("raw key [{}] raw keys [{}] your keys [{}]", local.get(), group.get(), keys);
+            return false;
+        }
+        List<String> sorted = new ArrayList<>(new TreeSet<>(keys));
+        // 先按顺序在本地抢占
+        List<String> locked = new ArrayList<>(sorted.size());
+        try {
+            for (String key : sorted) {
+                if (!table.tryLock(key)) {
+                    logger.trace("[{}]加锁[{}]失败，本地其他线程持有[{}]", value, sorted, key);
+                    return false;
+                }
+                locked.add(key);
+            }
+            Long result = scriptRegistry.execute(multiLockScript, sorted, value, String.valueOf(seconds * 1000));
+            if (!Objects.equals(result, 1L)) {
+                logger.trace("[{}]加锁[{}]失败", value, sorted);
+                return false;
+            }
+            group.set(sorted);//设置线程持有的一组key
+            sorted.forEach(key -> expireHandler.hold(key, value, seconds));//交给看门狗续期
+            logger.trace("[{}]加锁[{}]成功", value, sorted);
+            locked.clear();
+            return true;
+        } finally {
+            // 没有全部加锁成功时，释放已经抢到的本地锁
+            locked.forEach(table::unlock);
+        }
+    }
+
+    /**
+     * 释放{@link #lockAll(Collection)}获取的一组key，一次脚本调用全部解锁
+     */
+    public void unlockAll() {
+        String value = LockUtil.value.get();
+        List<String> keys = group.get();
+        if (keys == null) {
+            logger.warn("[{}]未持有任何一组锁", value);
+            return;
+        }
+        try {
+            Long result = scriptRegistry.execute(multiUnlockScript, keys, value, LockWaitQueue.RELEASE_CHANNEL);
+            if (Objects.equals(result, (long) keys.size())) {
+                logger.info("[{}]删除锁[{}]成功", value, keys);
+            } else {
+                logger.warn("[{}]删除锁[{}]只成功了[{}]个", value, keys, result);
+            }
+        } finally {
+            // 不管redis是否能删除key，当前线程都不应该再持有这些key
+            group.remove();
+            keys.forEach(key -> {
+                expireHandler.release(key, value);
+                table.unlock(key);
+            });
+        }
+    }
+
+    /**
+     * 当前线程持有锁的令牌，用于拒绝过期持有者的写入<br/>
+     * 只有{@link #lock}和{@link #lockTimeOut}会生成令牌，{@link #lockAll}加的一组锁没有令牌
+     *
+     * @return 令牌，未持有锁或持有的是一组锁时为0
+     * @see #fenceKey(String)
+     */
+    public long fencingToken() {
+        return local.get() == null ? 0L : token.get();
+    }
+
+    /**
+     * 加锁并生成令牌，原子操作
+     *
+     * @param key     互斥key
+     * @param value   分布式唯一值
+     * @param seconds 持有时间
+     * @return 单调递增的令牌，加锁失败为0
+     */
+    private long acquire(String key, String value, long seconds) {
+        Long result = scriptRegistry.execute(lockScript, List.of(key, fenceKey(key)), value, String.valueOf(seconds * 1000));
+        return Objects.requireNonNullElse(result, 0L);
+    }
+
     /**
      * 检查并删除，原子操作
      *
@@ -229,7 +427,7 @@ public class LockUtil {
      * @return 是否删除成功
      */
     private boolean checkAndDelete(String key, String value) {
-        Boolean result = redisTemplate.execute(unlockScript, List.of(key, LOCK_KEYS), value);
+        Boolean result = scriptRegistry.execute(unlockScript, List.of(key), value, LockWaitQueue.releaseChannel(key));
         return Objects.requireNonNullElse(result, false);
     }
 
@@ -248,4 +446,18 @@ public class LockUtil {
     public static String remoteKey(@NotNull String id) {
         return REMOTE_LOCK + ":" + id;
     }
+
+    //锁的令牌计数器，解锁后保留，保证令牌单调递增
+    //集群模式下要和锁在同一个slot：锁已经有hashtag时沿用，没有时把整个锁名作为hashtag
+    //锁名中有'}'却没有hashtag时无法构造同一个slot的key，这种锁名不能在集群模式下使用
+    @NotNull
+    public static String fenceKey(@NotNull String key) {
+        return (hasHashTag(key) || key.indexOf('}') >= 0 ? key : "{" + key + "}") + ":FENCE";
+    }
+
+    //redis按第一个'{'和之后第一个'}'之间的非空内容计算slot
+    static boolean hasHashTag(@NotNull String key) {
+        int start = key.indexOf('{');
+        return start >= 0 && key.indexOf('}', start + 1) > start + 1;
+    }
 }
@@ -0,0 +1,105 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分布式锁的等待队列<br/>
+ * unlock.lua删除锁后会向{@link #releaseChannel(String)}发布解锁通知，
+ * 整个JVM只用一个共享的pub/sub连接以模式订阅所有解锁频道，再在本地分发给等待该key的调用方。<br/>
+ * 等待方先{@link #register(String)}再尝试加锁，这样在两次尝试之间发生的解锁也不会被错过。
+ */
+@Component
+public class LockWaitQueue {
+    private static final Logger logger = LoggerFactory.getLogger(LockWaitQueue.class);
+
+    //解锁通知的频道前缀
+    public static final String RELEASE_CHANNEL = "LOCK-RELEASE";
+
+    //key -> 等待该key解锁的调用方
+    private final Map<String, Set<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ReactiveRedisMessageListenerContainer reactiveRedisMessageListenerContainer;
+
+    private Disposable subscription;
+
+    @NotNull
+    public static String releaseChannel(@NotNull String key) {
+        return RELEASE_CHANNEL + ":" + key;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        String prefix = RELEASE_CHANNEL + ":";
+        subscription = reactiveRedisMessageListenerContainer.receive(PatternTopic.of(prefix + "*"))
+                .doOnSubscribe(s -> logger.info("订阅解锁通知: [ {}* ]", prefix))
+                .doOnError(e -> logger.warn("解锁通知订阅中断，稍后重试", e))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> release(message.getChannel().substring(prefix.length())));
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        waiters.values().forEach(set -> set.forEach(future -> future.cancel(false)));
+        waiters.clear();
+    }
+
+    /**
+     * 注册一个等待者，key被解锁时完成
+     *
+     * @param key 互斥key
+     * @return 解锁通知
+     */
+    @NotNull
+    public CompletableFuture<Void> register(@NotNull String key) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        //compute与release中的remove互斥，避免加入一个刚被移除的集合而错过通知
+        waiters.compute(key, (k, set) -> {
+            Set<CompletableFuture<Void>> futures = set == null ? ConcurrentHashMap.newKeySet() : set;
+            futures.add(future);
+            return futures;
+        });
+        return future;
+    }
+
+    /**
+     * 取消等待，无论是否已经收到通知都需要调用
+     *
+     * @param key    互斥key
+     * @param future {@link #register(String)}返回的通知
+     */
+    public void unregister(@NotNull String key, @NotNull CompletableFuture<Void> future) {
+        waiters.computeIfPresent(key, (k, set) -> {
+            set.remove(future);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    //唤醒本地所有等待该key的调用方，由它们重新竞争
+    private void release(@NotNull String key) {
+        Set<CompletableFuture<Void>> set = waiters.remove(key);
+        if (set != null) {
+            logger.trace("锁[{}]已解锁，唤醒[{}]个等待者", key, set.size());
+            set.forEach(future -> future.complete(null));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 响应式批量读写<br/>
+ * 输入的key按{@link #CHUNK}个一组合并为一次MGET/MSET，最多{@link #CONCURRENCY}组同时执行，
+ * 上游按下游的消费速度拉取key；结果按输入的顺序发出。<br/>
+ * 集群模式下一条MGET/MSET只能包含同一个slot的key，每组再按slot拆分后并发执行；
+ * 需要批量读写的key最好用{@code {hashtag}}放到同一个slot，否则会退化为逐个读写。
+ */
+@Component
+public class ReactiveBulkUtil {
+
+    //每组的key数
+    private static final int CHUNK = 100;
+    //同时执行的组数
+    private static final int CONCURRENCY = 4;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    @Autowired
+    @Qualifier("reactiveLettuceConnectionFactory")
+    private LettuceConnectionFactory reactiveLettuceConnectionFactory;
+
+    /**
+     * 批量读取
+     *
+     * @param keys key
+     * @return key -> 值，按输入的顺序，不存在的key值为null
+     */
+    @NotNull
+    public Flux<Map.Entry<String, Object>> multiGet(@NotNull Flux<String> keys) {
+        return keys.buffer(CHUNK)
+                .flatMapSequential(this::multiGet, CONCURRENCY)
+                .flatMapIterable(entries -> entries);
+    }
+
+    /**
+     * 批量写入
+     *
+     * @param entries key -> 值
+     * @param ttl     存活时间，为null时不过期
+     * @return 写入的个数
+     */
+    @NotNull
+    public Mono<Long> multiSet(@NotNull Flux<Map.Entry<String, Object>> entries, @Nullable Duration ttl) {
+        return entries.buffer(CHUNK)
+                .flatMap(chunk -> multiSet(chunk, ttl), CONCURRENCY)
+                .reduce(0L, Long::sum);
+    }
+
+    //读取一组，集群模式下按slot拆分
+    @NotNull
+    private Mono<List<Map.Entry<String, Object>>> multiGet(@NotNull List<String> chunk) {
+        return Flux.fromIterable(groupBySlot(chunk))
+                .flatMap(group -> reactiveRedisTemplate.opsForValue().multiGet(group).map(values -> zip(group, values)))
+                .collectList()
+                .map(parts -> {
+                    Map<String, Object> values = new HashMap<>();
+                    parts.forEach(values::putAll);
+                    List<Map.Entry<String, Object>> result = new ArrayList<>(chunk.size());
+                    for (String key : chunk) {
+                        result.add(new AbstractMap.SimpleImmutableEntry<>(key, values.get(key)));
+                    }
+                    return result;
+                });
+    }
+
+    //写入一组，集群模式下按slot拆分；有存活时间时逐个SET，由lettuce在同一个连接上流水线发送
+    @NotNull
+    private Mono<Long> multiSet(@NotNull List<Map.Entry<String, Object>> chunk, @Nullable Duration ttl) {
+        if (ttl != null) {
+            return Flux.fromIterable(chunk)
+                    .flatMap(entry -> reactiveRedisTemplate.opsForValue().set(entry.getKey(), entry.getValue(), ttl))
+                    .filter(Boolean::booleanValue)
+                    .count();
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        chunk.forEach(entry -> values.put(entry.getKey(), entry.getValue()));
+        return Flux.fromIterable(groupBySlot(values.keySet()))
+                .flatMap(group -> {
+                    Map<String, Object> part = new LinkedHashMap<>();
+                    group.forEach(key -> part.put(key, values.get(key)));
+                    return reactiveRedisTemplate.opsForValue().multiSet(part).map(ok -> ok ? (long) part.size() : 0L);
+                })
+                .reduce(0L, Long::sum);
+    }
+
+    //非集群模式下不拆分
+    @NotNull
+    private Collection<List<String>> groupBySlot(@NotNull Collection<String> keys) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (!reactiveLettuceConnectionFactory.isClusterAware()) {
+            return Collections.singletonList(distinct);
+        }
+        return SlotUtil.groupBySlot(distinct, key -> key);
+    }
+
+    @NotNull
+    private static Map<String, Object> zip(@NotNull List<String> keys, @NotNull List<Object> values) {
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < keys.size() && i < values.size(); i++) {
+            result.put(keys.get(i), values.get(i));
+        }
+        return result;
+    }
+}
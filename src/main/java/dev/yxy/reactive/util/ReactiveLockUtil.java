@@ -0,0 +1,244 @@
+package dev.yxy.reactive.util;
+
+import dev.yxy.reactive.handler.ExpireHandler;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static dev.yxy.reactive.util.LockUtil.DEFAULT_SECOND;
+
+/**
+ * 响应式分布式重入互斥锁<br/>
+ * 与{@link LockUtil}不同，这里不使用ThreadLocal，因为在WebFlux的事件循环线程上一个线程会服务成千上万个请求，
+ * 持有关系改为记录在Reactor的{@link Context}中，随调用链传递。<br/>
+ * 所有操作都基于{@link ReactiveStringRedisTemplate}，等待时只订阅解锁通知，不会阻塞Netty线程。
+ */
+@Component
+public class ReactiveLockUtil {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveLockUtil.class);
+
+    //Context中记录已持有锁的key，对应的值为Map<String, LockHandle>
+    private static final Class<ReactiveLockUtil> CONTEXT_KEY = ReactiveLockUtil.class;
+    //单次等待解锁通知的时间，锁因过期而非解锁释放时不会有通知
+    private static final Duration INTERVAL = Duration.ofMillis(500);
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private DefaultRedisScript<Long> lockScript;
+
+    @Autowired
+    private DefaultRedisScript<Boolean> unlockScript;
+
+    @Autowired
+    private LockWaitQueue lockWaitQueue;
+
+    @Autowired
+    private ExpireHandler expireHandler;
+
+    @NotNull
+    private static String unique() {
+        return LockUtil.address + "/" + UUID.randomUUID();
+    }
+
+    @NotNull
+    private static Map<String, LockHandle> held(@NotNull Context context) {
+        return context.getOrDefault(CONTEXT_KEY, Collections.emptyMap());
+    }
+
+    /**
+     * 分布式重入互斥锁(非阻塞，只尝试一次)
+     *
+     * @param key 互斥key
+     * @return 获取成功发出锁凭证，失败则为空
+     */
+    @NotNull
+    public Mono<LockHandle> lock(@NotNull String key) {
+        return lock(key, DEFAULT_SECOND);
+    }
+
+    /**
+     * 分布式重入互斥锁(非阻塞，只尝试一次)
+     *
+     * @param key     互斥key
+     * @param seconds 持有时间
+     * @return 获取成功发出锁凭证，失败则为空
+     */
+    @NotNull
+    public Mono<LockHandle> lock(@NotNull String key, long seconds) {
+        return Mono.subscriberContext().flatMap(context -> {
+            LockHandle handle = held(context).get(key);
+            if (handle != null) {//调用链上已经持有此key
+                //延长持有时间成功后再计数，被取消时计数器不变
+                return reactiveStringRedisTemplate.expire(key, Duration.ofSeconds(seconds))
+                        .thenReturn(handle)
+                        .doOnNext(it -> {
+                            int count = it.enter();//计数器加一
+                            logger.trace("[{}]对锁[{}]计数器增加结果[{}]", it.getValue(), key, count);
+                        });
+            }
+            String value = unique();
+            //锁凭证是否已经交给调用方，交出之前redis上的锁只有这里知道
+            AtomicBoolean delivered = new AtomicBoolean();
+            return scriptRegistry.executeReactive(lockScript, List.of(key, LockUtil.fenceKey(key)), value, String.valueOf(seconds * 1000))
+                    .next()
+                    .filter(token -> token > 0)
+                    .map(token -> new LockHandle(key, value, seconds, token))
+                    .doOnNext(it -> {
+                        expireHandler.hold(key, value, seconds);//交给看门狗续期
+                        logger.trace("[{}]加锁[{}]成功", value, key);
+                    })
+                    .switchIfEmpty(Mono.fromRunnable(() -> logger.trace("[{}]加锁[{}]失败", value, key)))
+                    .doOnNext(it -> delivered.set(true))
+                    //脚本可能已经在redis上执行成功，出错或被取消时主动释放，否则锁要等到过期才能被其他人获取
+                    .onErrorResume(e -> release(key, value).then(Mono.error(e)))
+                    .doOnCancel(() -> {
+                        if (!delivered.get()) {
+                            release(key, value).subscribe();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 分布式重入互斥锁(非阻塞等待，超时返回)<br/>
+     * 等待期间只订阅{@link LockWaitQueue}的解锁通知，不占用线程
+     *
+     * @param key     互斥key
+     * @param seconds 持有时间
+     * @param wait    最长等待时间
+     * @return 获取成功发出锁凭证，超时则为空
+     */
+    @NotNull
+    public Mono<LockHandle> lock(@NotNull String key, long seconds, @NotNull Duration wait) {
+        return Mono.defer(() -> {
+            long deadline = System.currentTimeMillis() + wait.toMillis();
+            Mono<LockHandle> attempt = Mono.defer(() -> {
+                // 先注册再尝试加锁，避免错过两者之间的解锁通知
+                CompletableFuture<Void> released = lockWaitQueue.register(key);
+                Duration timeout = Duration.ofMillis(Math.max(Math.min(INTERVAL.toMillis(), deadline - System.currentTimeMillis()), 0));
+                return lock(key, seconds)
+                        .switchIfEmpty(Mono.fromFuture(released).timeout(timeout, Mono.empty()).then(Mono.empty()))
+                        .doFinally(signal -> lockWaitQueue.unregister(key, released));
+            });
+            return attempt.repeatWhenEmpty(repeat -> repeat.takeWhile(i -> System.currentTimeMillis() < deadline));
+        });
+    }
+
+    /**
+     * 分布式重入锁解锁
+     *
+     * @param handle 锁凭证
+     * @return 是否解锁成功
+     */
+    @NotNull
+    public Mono<Boolean> unlock(@NotNull LockHandle handle) {
+        return Mono.defer(() -> {
+            // 解锁重入锁要先对计数器做减数操作
+            int count = handle.exit();
+            if (count > 0) {
+                logger.trace("[{}]对锁[{}]计数器减少结果[{}]", handle.getValue(), handle.getKey(), count - 1);
+                return Mono.just(true);
+            }
+            // 不管redis是否能删除key，都不应该再续期
+            expireHandler.release(handle.getKey(), handle.getValue());
+            // 检查并删除，原子操作
+            return checkAndDelete(handle.getKey(), handle.getValue())
+                    .doOnNext(result -> {
+                        if (result) {
+                            logger.info("[{}]删除锁[{}]成功", handle.getValue(), handle.getKey());
+                        } else {
+                            logger.warn("[{}]删除锁[{}]失败", handle.getValue(), handle.getKey());
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 释放还没有交给调用方的锁，value不一致时不会删除，所以不确定是否加锁成功时也可以调用
+     */
+    @NotNull
+    private Mono<Boolean> release(@NotNull String key, @NotNull String value) {
+        return Mono.defer(() -> {
+            expireHandler.release(key, value);
+            return checkAndDelete(key, value);
+        }).doOnNext(result -> {
+            if (result) {
+                logger.info("[{}]释放未交出的锁[{}]", value, key);
+            }
+        }).onErrorResume(e -> {
+            logger.warn("[{}]释放未交出的锁[{}]失败，等待锁过期", value, key, e);
+            return Mono.just(false);
+        });
+    }
+
+    /**
+     * 检查并删除，原子操作
+     */
+    @NotNull
+    private Mono<Boolean> checkAndDelete(@NotNull String key, @NotNull String value) {
+        return scriptRegistry.executeReactive(unlockScript, List.of(key), value, LockWaitQueue.releaseChannel(key))
+                .next()
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 在持有锁的情况下执行操作，结束(完成、异常、取消)后自动解锁<br/>
+     * action内部再次对同一个key加锁会被视为重入
+     *
+     * @param key    互斥key
+     * @param action 持有锁时执行的操作
+     * @return 操作的结果，未获取到锁则为空
+     */
+    @NotNull
+    public <T> Mono<T> withLock(@NotNull String key, @NotNull Function<LockHandle, Mono<T>> action) {
+        return withLock(lock(key), action);
+    }
+
+    /**
+     * 在持有锁的情况下执行操作，结束(完成、异常、取消)后自动解锁<br/>
+     * action内部再次对同一个key加锁会被视为重入
+     *
+     * @param key    互斥key
+     * @param wait   最长等待时间
+     * @param action 持有锁时执行的操作
+     * @return 操作的结果，等待超时则为空
+     */
+    @NotNull
+    public <T> Mono<T> withLock(@NotNull String key, @NotNull Duration wait, @NotNull Function<LockHandle, Mono<T>> action) {
+        return withLock(lock(key, DEFAULT_SECOND, wait), action);
+    }
+
+    @NotNull
+    private <T> Mono<T> withLock(@NotNull Mono<LockHandle> lock, @NotNull Function<LockHandle, Mono<T>> action) {
+        return Mono.usingWhen(lock,
+                handle -> action.apply(handle).subscriberContext(context -> {
+                    Map<String, LockHandle> held = new HashMap<>(held(context));
+                    held.put(handle.getKey(), handle);
+                    return context.put(CONTEXT_KEY, Collections.unmodifiableMap(held));
+                }),
+                this::unlock,
+                (handle, e) -> unlock(handle),
+                this::unlock);
+    }
+}
@@ -0,0 +1,136 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 响应式分布式限流器(令牌桶)<br/>
+ * 令牌桶保存在redis中，由token_bucket.lua按流逝时间补充；
+ * 每个进程一次从redis预取一批令牌放在本地，本地令牌用完前不会访问redis，
+ * 同一时刻每个key最多只有一个预取请求在途，其他请求共享它的结果；
+ * 共享的一批令牌不够分时，没抢到的请求继续预取，直到redis的桶也空了才拒绝。<br/>
+ * 本地令牌只在{@link #LOCAL_TTL}内有效，避免囤积的令牌在之后形成突发流量，过期未用完的令牌归还给redis。
+ */
+@Component
+public class ReactiveRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveRateLimiter.class);
+
+    //本地预取令牌的有效期，单位ms
+    private static final long LOCAL_TTL = 1000;
+
+    //key -> 本地预取的令牌
+    private final Map<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private DefaultRedisScript<Long> tokenBucketScript;
+
+    /**
+     * 尝试获取一个令牌
+     *
+     * @param key      限流key
+     * @param rate     每秒生成的令牌数
+     * @param capacity 桶容量，即允许的突发量
+     * @param batch    每次从redis预取的令牌数
+     * @return 是否获取成功
+     */
+    @NotNull
+    public Mono<Boolean> tryAcquire(@NotNull String key, long rate, long capacity, int batch) {
+        LocalBucket bucket = buckets.computeIfAbsent(key, k -> new LocalBucket());
+        if (bucket.take()) {
+            return Mono.just(true);
+        }
+        giveBack(key, rate, capacity, bucket.drainExpired());
+        return acquire(bucket, () -> scriptRegistry
+                .executeReactive(tokenBucketScript, List.of(key), rate, capacity, batch)
+                .next()
+                .defaultIfEmpty(0L)
+                .doOnNext(granted -> logger.trace("限流[{}]预取令牌[{}/{}]", key, granted, batch)));
+    }
+
+    //本地没有令牌时预取，预取到的令牌被其他请求抢光了就再预取，redis也给不出令牌时才拒绝
+    @NotNull
+    private Mono<Boolean> acquire(@NotNull LocalBucket bucket, @NotNull Supplier<Mono<Long>> fetch) {
+        return Mono.defer(() -> {
+            if (bucket.take()) {
+                return Mono.just(true);
+            }
+            return bucket.refill(fetch).flatMap(granted -> granted > 0 ? acquire(bucket, fetch) : Mono.just(bucket.take()));
+        });
+    }
+
+    //过期未用完的本地令牌归还给redis，申请负数个令牌即为归还，不超过桶容量
+    private void giveBack(@NotNull String key, long rate, long capacity, long permits) {
+        if (permits <= 0) {
+            return;
+        }
+        scriptRegistry.executeReactive(tokenBucketScript, List.of(key), rate, capacity, -permits)
+                .subscribe(
+                        it -> logger.trace("限流[{}]归还过期的本地令牌[{}]", key, permits),
+                        e -> logger.warn("限流[{}]归还过期的本地令牌[{}]失败", key, permits, e));
+    }
+
+    @NotNull
+    public static String rateLimitKey(@NotNull String name) {
+        return "RATE-LIMIT:" + name;
+    }
+
+    //本地预取的令牌
+    private static final class LocalBucket {
+        private long permits;
+        private long expireAt;
+        //过期未用完、等待归还的令牌
+        private long expired;
+        private Mono<Long> pending;
+
+        //取一个本地令牌
+        private synchronized boolean take() {
+            if (permits > 0 && System.currentTimeMillis() < expireAt) {
+                permits--;
+                return true;
+            }
+            expired += permits;
+            permits = 0;
+            return false;
+        }
+
+        //取出等待归还的令牌数
+        private synchronized long drainExpired() {
+            long drained = expired;
+            expired = 0;
+            return drained;
+        }
+
+        //从redis预取，已有在途的预取时直接共享
+        private synchronized Mono<Long> refill(@NotNull Supplier<Mono<Long>> fetch) {
+            if (pending == null) {
+                pending = fetch.get()
+                        .doOnNext(this::add)
+                        .doFinally(signal -> clear())
+                        .cache();
+            }
+            return pending;
+        }
+
+        private synchronized void add(long granted) {
+            permits += granted;
+            expireAt = System.currentTimeMillis() + LOCAL_TTL;
+        }
+
+        private synchronized void clear() {
+            pending = null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * 响应式分布式计数信号量<br/>
+ * 持有者记录在zset中，score为持有者的过期时间，进程崩溃没有归还的许可到期后会被下一次申请清理。
+ */
+@Component
+public class ReactiveSemaphore {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveSemaphore.class);
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private DefaultRedisScript<Long> semaphoreScript;
+
+    /**
+     * 尝试获取一个许可
+     *
+     * @param key     信号量key
+     * @param holder  持有者，需要全局唯一
+     * @param permits 许可总数
+     * @param lease   最长持有时间
+     * @return 是否获取成功
+     */
+    @NotNull
+    public Mono<Boolean> tryAcquire(@NotNull String key, @NotNull String holder, int permits, @NotNull Duration lease) {
+        return scriptRegistry.executeReactive(semaphoreScript, List.of(key), holder, permits, lease.toMillis())
+                .next()
+                .map(result -> result == 1L)
+                .defaultIfEmpty(false)
+                .doOnNext(result -> logger.trace("[{}]获取信号量[{}]结果[{}]", holder, key, result));
+    }
+
+    /**
+     * 归还许可
+     *
+     * @param key    信号量key
+     * @param holder 持有者
+     * @return 是否归还成功
+     */
+    @NotNull
+    public Mono<Boolean> release(@NotNull String key, @NotNull String holder) {
+        return reactiveStringRedisTemplate.opsForZSet().remove(key, holder).map(count -> count > 0);
+    }
+
+    /**
+     * 持有许可执行操作，结束(完成、异常、取消)后自动归还
+     *
+     * @param key      信号量key
+     * @param permits  许可总数
+     * @param lease    最长持有时间
+     * @param action   持有许可时执行的操作
+     * @param rejected 没有许可时执行的操作
+     * @return 操作的结果
+     */
+    @NotNull
+    public <T> Mono<T> withPermit(@NotNull String key, int permits, @NotNull Duration lease, @NotNull Supplier<Mono<T>> action, @NotNull Supplier<Mono<T>> rejected) {
+        return Mono.defer(() -> {
+            String holder = LockUtil.address + "/" + UUID.randomUUID();
+            return tryAcquire(key, holder, permits, lease).flatMap(acquired -> acquired
+                    ? Mono.usingWhen(Mono.just(holder), h -> action.get(), h -> release(key, h), (h, e) -> release(key, h), h -> release(key, h))
+                    : rejected.get());
+        });
+    }
+
+    @NotNull
+    public static String semaphoreKey(@NotNull String name) {
+        return "SEMAPHORE:" + name;
+    }
+}
@@ -0,0 +1,228 @@
+package dev.yxy.reactive.util;
+
+import dev.yxy.reactive.handler.ExpireHandler;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+import static dev.yxy.reactive.util.LockUtil.DEFAULT_SECOND;
+
+/**
+ * 分布式重入读写锁<br/>
+ * 锁是一个hash，mode字段记录当前是读锁还是写锁，其余字段是各持有者的重入次数和租期截止时间。<br/>
+ * 读锁之间互不阻塞，写锁与其他任何锁互斥；写锁持有者可以再加读锁，反之不行。<br/>
+ * 每个持有者的租期由看门狗单独续期，加锁时会先移除租期已过的持有者，进程崩溃后留下的读者不会一直阻塞写者；
+ * 阻塞等待的写者会标记自己在等待，期间不再接受新的读者。<br/>
+ * 与{@link LockUtil}一样以线程为持有者，同一线程可以同时持有多个key的读写锁。
+ */
+@Component
+public class ReadWriteLockUtil {
+    private static final Logger logger = LoggerFactory.getLogger(ReadWriteLockUtil.class);
+
+    //单次等待解锁通知的时间，单位ms
+    private static final long TIME_OUT = 500;
+    //再尝试次数
+    private static final long NUM = 3;
+
+    //唯一的value
+    private static final ThreadLocal<String> value = ThreadLocal.withInitial(() -> LockUtil.address + "/" + Thread.currentThread().getId());
+    //线程持有的key及其重入次数
+    private static final ThreadLocal<Map<String, Integer>> holds = ThreadLocal.withInitial(HashMap::new);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private DefaultRedisScript<Long> readLockScript;
+
+    @Autowired
+    private DefaultRedisScript<Long> writeLockScript;
+
+    @Autowired
+    private DefaultRedisScript<Boolean> readWriteUnlockScript;
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private LockWaitQueue lockWaitQueue;
+
+    @Autowired
+    private ExpireHandler expireHandler;
+
+    /**
+     * 分布式重入读锁
+     *
+     * @param key 互斥key
+     * @return 是否获取成功
+     */
+    public boolean readLock(@NotNull String key) {
+        return lock(readLockScript, key, DEFAULT_SECOND, 0, 0);
+    }
+
+    /**
+     * 分布式重入读锁
+     *
+     * @param key     互斥key
+     * @param seconds 持有时间
+     * @return 是否获取成功
+     */
+    public boolean readLock(@NotNull String key, long seconds) {
+        return lock(readLockScript, key, seconds, 0, 0);
+    }
+
+    /**
+     * 分布式重入读锁(阻塞，超时返回，多次尝试)
+     *
+     * @param key 互斥key
+     * @return 是否获取成功
+     */
+    public boolean readLockTimeOut(@NotNull String key) {
+        return lock(readLockScript, key, DEFAULT_SECOND, TIME_OUT, NUM);
+    }
+
+    /**
+     * 分布式重入读锁(阻塞，超时返回，多次尝试)
+     *
+     * @param key     互斥key
+     * @param timeOut 单次等待解锁通知的时间(ms)
+     * @param num     再尝试次数
+     * @return 是否获取成功
+     */
+    public boolean readLockTimeOut(@NotNull String key, long timeOut, long num) {
+        return lock(readLockScript, key, DEFAULT_SECOND, timeOut, num);
+    }
+
+    /**
+     * 分布式重入写锁
+     *
+     * @param key 互斥key
+     * @return 是否获取成功
+     */
+    public boolean writeLock(@NotNull String key) {
+        return lock(writeLockScript, key, DEFAULT_SECOND, 0, 0);
+    }
+
+    /**
+     * 分布式重入写锁
+     *
+     * @param key     互斥key
+     * @param seconds 持有时间
+     * @return 是否获取成功
+     */
+    public boolean writeLock(@NotNull String key, long seconds) {
+        return lock(writeLockScript, key, seconds, 0, 0);
+    }
+
+    /**
+     * 分布式重入写锁(阻塞，超时返回，多次尝试)
+     *
+     * @param key 互斥key
+     * @return 是否获取成功
+     */
+    public boolean writeLockTimeOut(@NotNull String key) {
+        return lock(writeLockScript, key, DEFAULT_SECOND, TIME_OUT, NUM);
+    }
+
+    /**
+     * 分布式重入写锁(阻塞，超时返回，多次尝试)
+     *
+     * @param key     互斥key
+     * @param timeOut 单次等待解锁通知的时间(ms)
+     * @param num     再尝试次数
+     * @return 是否获取成功
+     */
+    public boolean writeLockTimeOut(@NotNull String key, long timeOut, long num) {
+        return lock(writeLockScript, key, DEFAULT_SECOND, timeOut, num);
+    }
+
+    /**
+     * 读写锁加锁，等待期间线程挂起在{@link LockWaitQueue}的解锁通知上
+     *
+     * @param script  读锁或写锁脚本
+     * @param key     互斥key
+     * @param seconds 持有时间
+     * @param timeOut 单次等待解锁通知的时间(ms)
+     * @param num     再尝试次数，为0时只尝试一次
+     * @return 是否获取成功
+     */
+    private boolean lock(@NotNull DefaultRedisScript<Long> script, @NotNull String key, long seconds, long timeOut, long num) {
+        String value = ReadWriteLockUtil.value.get();
+        long deadline = System.currentTimeMillis() + timeOut * num;
+        long times = 0L;
+        for (; ; ) {
+            // 先注册再尝试加锁，避免错过两者之间的解锁通知
+            CompletableFuture<Void> released = lockWaitQueue.register(key);
+            try {
+                // 还会继续等待的时间，写者据此标记等待，阻止新的读者
+                long waiting = times < num ? Math.max(deadline - System.currentTimeMillis(), 0) : 0;
+                Long result = scriptRegistry.execute(script, List.of(key), value, String.valueOf(seconds * 1000), String.valueOf(waiting));
+                if (Objects.equals(result, 1L)) {
+                    int count = holds.get().merge(key, 1, Integer::sum);
+                    if (count == 1) {
+                        expireHandler.hold(key, value, seconds);//交给看门狗续期
+                    }
+                    logger.trace("[{}]加锁[{}]成功，重入次数[{}]", value, key, count);
+                    return true;
+                }
+                // 如果机会耗尽，则停止尝试
+                if (times >= num) {
+                    logger.trace("[{}]加锁[{}]失败", value, key);
+                    return false;
+                }
+                // 挂起等待解锁通知，超时后也再尝试一次，因为锁可能是过期而不是被解锁
+                released.get(timeOut, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException | CancellationException ignored) {
+                logger.trace("[{}]等待锁[{}]的解锁通知超时", value, key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.trace("[{}]等待锁[{}]时被中断", value, key);
+                return false;
+            } finally {
+                lockWaitQueue.unregister(key, released);
+            }
+            times++;
+        }
+    }
+
+    /**
+     * 读写锁解锁，读锁和写锁都用此方法，每次加锁都要对应一次解锁
+     *
+     * @param key 互斥key
+     */
+    public void unlock(@NotNull String key) {
+        String value = ReadWriteLockUtil.value.get();
+        Integer count = holds.get().get(key);
+        //如果当前线程未持有此key则不需要解锁
+        if (count == null) {
+            logger.warn("[{}]未持有锁[{}]", value, key);
+            return;
+        }
+        try {
+            Boolean result = scriptRegistry.execute(readWriteUnlockScript, List.of(key), value, LockWaitQueue.releaseChannel(key));
+            if (Objects.equals(result, true)) {
+                logger.trace("[{}]解锁[{}]成功，剩余重入次数[{}]", value, key, count - 1);
+            } else {
+                logger.warn("[{}]解锁[{}]失败", value, key);
+            }
+        } finally {
+            if (count > 1) {
+                holds.get().put(key, count - 1);
+            } else {
+                // 不管redis是否能解锁，当前线程都不应该再持有key
+                holds.get().remove(key);
+                expireHandler.release(key, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package dev.yxy.reactive.util;
+
+import dev.yxy.reactive.property.RedisProperty;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 响应式redis命令的合并发送<br/>
+ * 开启reactive.redis.batching后，同一个时间窗口内各个请求发出的命令最多合并max-batch个，
+ * 在一个独占的lettuce连接上关闭自动flush，一批命令写完后flush一次，用几微秒的延迟换取高并发下的吞吐，
+ * 适合计数器、session续期这类高频的小命令。<br/>
+ * 命令是异步发出的，不占用线程也不借用连接池；每个命令的结果(包括错误)只返回给发出它的调用方，不影响同一批的其他命令。
+ * 同一批命令之间没有原子性，不要把需要原子性的命令放进来。<br/>
+ * 合并、排队和处理链意外终止后的恢复由{@link BatchQueue}完成。<br/>
+ * 没有开启时直接使用{@link ReactiveStringRedisTemplate}，调用方不需要区分。
+ */
+@Component
+public class RedisCommandBatcher {
+
+    @Autowired
+    private RedisProperty redis;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    //只在开启batching时存在，见RedisConfig
+    @Autowired
+    @Qualifier("batchingLettuceConnectionFactory")
+    private ObjectProvider<LettuceConnectionFactory> batchingLettuceConnectionFactory;
+
+    //独占的连接，关闭了自动flush
+    private RedisConnection connection;
+    private StatefulConnection<byte[], byte[]> statefulConnection;
+    private RedisClusterAsyncCommands<byte[], byte[]> asyncCommands;
+
+    private BatchQueue<Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<?>>, RedisFuture<?>> commands;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    void subscribe() {
+        RedisProperty.Batching batching = redis.getBatching();
+        LettuceConnectionFactory factory = batchingLettuceConnectionFactory.getIfAvailable();
+        if (!batching.isEnabled() || factory == null) {
+            return;
+        }
+        //工厂不共享连接，getNativeConnection得到的是这个RedisConnection独占的连接
+        connection = factory.getConnection();
+        asyncCommands = ((LettuceConnection) connection).getNativeConnection();
+        statefulConnection = asyncCommands instanceof RedisAdvancedClusterAsyncCommands
+                ? ((RedisAdvancedClusterAsyncCommands<byte[], byte[]>) asyncCommands).getStatefulConnection()
+                : ((RedisAsyncCommands<byte[], byte[]>) asyncCommands).getStatefulConnection();
+        statefulConnection.setAutoFlushCommands(false);
+        commands = new BatchQueue<>("redis-command", batching.getMaxBatch(), batching.getWindow(), batching.getConcurrency(), this::flush);
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (commands != null) {
+            commands.dispose();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * GET
+     */
+    @NotNull
+    public Mono<String> get(@NotNull String key) {
+        if (commands == null) {
+            return reactiveStringRedisTemplate.opsForValue().get(key);
+        }
+        return submit(async -> async.get(bytes(key)), byte[].class).map(value -> new String(value, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * SET key value PX ttl
+     */
+    @NotNull
+    public Mono<Boolean> set(@NotNull String key, @NotNull String value, @NotNull Duration ttl) {
+        if (commands == null) {
+            return reactiveStringRedisTemplate.opsForValue().set(key, value, ttl);
+        }
+        return submit(async -> async.set(bytes(key), bytes(value), SetArgs.Builder.px(ttl.toMillis())), String.class).map("OK"::equals);
+    }
+
+    /**
+     * INCRBY
+     */
+    @NotNull
+    public Mono<Long> increment(@NotNull String key, long delta) {
+        if (commands == null) {
+            return reactiveStringRedisTemplate.opsForValue().increment(key, delta);
+        }
+        return submit(async -> async.incrby(bytes(key), delta), Long.class);
+    }
+
+    /**
+     * PEXPIRE
+     */
+    @NotNull
+    public Mono<Boolean> expire(@NotNull String key, @NotNull Duration ttl) {
+        if (commands == null) {
+            return reactiveStringRedisTemplate.expire(key, ttl);
+        }
+        return submit(async -> async.pexpire(bytes(key), ttl.toMillis()), Boolean.class);
+    }
+
+    /**
+     * DEL
+     */
+    @NotNull
+    public Mono<Long> delete(@NotNull String key) {
+        if (commands == null) {
+            return reactiveStringRedisTemplate.delete(key);
+        }
+        return submit(async -> async.del(bytes(key)), Long.class);
+    }
+
+    //每个命令等待自己的结果，同一批的其他命令失败不影响它
+    @NotNull
+    private <T> Mono<T> submit(@NotNull Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<?>> command, @NotNull Class<T> type) {
+        return commands.submit(command)
+                .flatMap(future -> Mono.<Object>fromCompletionStage(future))
+                .cast(type);
+    }
+
+    //一批命令写入连接后flush一次，不等待结果，结果按顺序对应
+    @NotNull
+    private Mono<List<RedisFuture<?>>> flush(@NotNull List<Function<RedisClusterAsyncCommands<byte[], byte[]>, RedisFuture<?>>> batch) {
+        return Mono.fromCallable(() -> {
+            List<RedisFuture<?>> futures = new ArrayList<>(batch.size());
+            //同一个连接上写入和flush不能交错
+            synchronized (statefulConnection) {
+                batch.forEach(command -> futures.add(command.apply(asyncCommands)));
+                statefulConnection.flushCommands();
+            }
+            return futures;
+        });
+    }
+
+    @NotNull
+    private static byte[] bytes(@NotNull String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
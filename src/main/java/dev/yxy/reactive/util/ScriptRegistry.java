@@ -0,0 +1,334 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.ReactiveRedisCallback;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lua脚本注册表<br/>
+ * 启动时把classpath:redis/*.lua全部SCRIPT LOAD到redis，之后只用EVALSHA调用，不再每次发送脚本内容。<br/>
+ * 主从切换等原因导致脚本缓存丢失时会收到NOSCRIPT，此时重新加载所有脚本并重试一次。<br/>
+ * 阻塞与响应式两种调用方式都会记录每个脚本的调用次数、错误次数、重载次数和耗时。<br/>
+ * 脚本的KEYS和ARGV都按UTF-8字符串发送，返回的字符串同样按UTF-8解析。
+ */
+@Component
+public class ScriptRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ScriptRegistry.class);
+
+    //脚本所在位置
+    private static final String LOCATION = "classpath:redis/*.lua";
+
+    //sha1 -> 脚本
+    private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+    //sha1 -> 脚本名
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    //脚本名 -> 调用统计
+    private final Map<String, ScriptMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @PostConstruct
+    void preload() throws IOException {
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            RedisScript<?> script = RedisScript.of(resource);
+            String name = Objects.requireNonNull(resource.getFilename()).replace(".lua", "");
+            scripts.put(script.getSha1(), script);
+            names.put(script.getSha1(), name);
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+                load(connection);
+                return null;
+            });
+            logger.info("预加载redis脚本: {}", names.values());
+        } catch (RuntimeException e) {
+            //redis暂时不可用时不影响启动，调用时收到NOSCRIPT会再加载
+            logger.warn("预加载redis脚本失败", e);
+        }
+    }
+
+    /**
+     * 阻塞方式执行脚本
+     *
+     * @param script 脚本
+     * @param keys   KEYS
+     * @param args   ARGV
+     * @return 脚本的结果
+     */
+    public <T> T execute(@NotNull RedisScript<T> script, @NotNull List<String> keys, @NotNull Object... args) {
+        ScriptMetrics metric = metrics(script);
+        long start = System.nanoTime();
+        boolean error = true;
+        try {
+            T result = stringRedisTemplate.execute((RedisCallback<T>) connection -> {
+                ReturnType type = ReturnType.fromJavaType(script.getResultType());
+                byte[][] keysAndArgs = keysAndArgs(keys, args);
+                try {
+                    return deserialize(connection.evalSha(script.getSha1(), type, keys.size(), keysAndArgs));
+                } catch (RuntimeException e) {
+                    if (!isNoScript(e)) {
+                        throw e;
+                    }
+                    metric.reloads.increment();
+                    logger.warn("脚本[{}]不存在，重新加载所有脚本", metric.name);
+                    register(script);
+                    load(connection);
+                    return deserialize(connection.evalSha(script.getSha1(), type, keys.size(), keysAndArgs));
+                }
+            });
+            error = false;
+            return result;
+        } finally {
+            metric.record(System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * 响应式执行脚本
+     *
+     * @param script 脚本
+     * @param keys   KEYS
+     * @param args   ARGV
+     * @return 脚本的结果，结果类型为List时合并为一个List发出
+     */
+    @NotNull
+    public <T> Flux<T> executeReactive(@NotNull RedisScript<T> script, @NotNull List<String> keys, @NotNull Object... args) {
+        ScriptMetrics metric = metrics(script);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            ReturnType type = ReturnType.fromJavaType(script.getResultType());
+            ByteBuffer[] keysAndArgs = Arrays.stream(keysAndArgs(keys, args)).map(ByteBuffer::wrap).toArray(ByteBuffer[]::new);
+            return reactiveStringRedisTemplate.execute((ReactiveRedisCallback<T>) connection -> Flux.from(connection.scriptingCommands()
+                    .<T>evalSha(script.getSha1(), type, keys.size(), duplicate(keysAndArgs)))
+                    .onErrorResume(ScriptRegistry::isNoScript, e -> {
+                        metric.reloads.increment();
+                        logger.warn("脚本[{}]不存在，重新加载所有脚本", metric.name);
+                        register(script);
+                        return load(connection).thenMany(connection.scriptingCommands()
+                                .evalSha(script.getSha1(), type, keys.size(), duplicate(keysAndArgs)));
+                    }))
+                    .transform(results -> collect(script, results))
+                    .map(ScriptRegistry::<T>deserialize)
+                    .doOnError(e -> metric.record(System.nanoTime() - start, true))
+                    .doOnComplete(() -> metric.record(System.nanoTime() - start, false));
+        });
+    }
+
+    /**
+     * 重新加载所有脚本，适用于pipeline中收到NOSCRIPT的场景
+     */
+    public void reload() {
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            load(connection);
+            return null;
+        });
+    }
+
+    /**
+     * 记录一次不经过注册表发出的脚本调用，如pipeline中的EVALSHA
+     *
+     * @param script 脚本
+     * @param nanos  耗时
+     * @param error  是否出错
+     */
+    public void record(@NotNull RedisScript<?> script, long nanos, boolean error) {
+        metrics(script).record(nanos, error);
+    }
+
+    /**
+     * 每个脚本的调用统计
+     */
+    @NotNull
+    public Collection<ScriptMetrics> metrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    //定期打印调用统计
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    void report() {
+        metrics.values().forEach(metric -> logger.debug("{}", metric));
+    }
+
+    /**
+     * 是否是脚本缓存丢失导致的异常
+     */
+    public static boolean isNoScript(@NotNull Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //不在redis/目录下的脚本也需要能重新加载
+    private void register(@NotNull RedisScript<?> script) {
+        scripts.putIfAbsent(script.getSha1(), script);
+    }
+
+    private void load(@NotNull RedisConnection connection) {
+        for (RedisScript<?> script : scripts.values()) {
+            connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @NotNull
+    private Mono<Void> load(@NotNull ReactiveRedisConnection connection) {
+        return Flux.fromIterable(scripts.values())
+                .concatMap(script -> connection.scriptingCommands().scriptLoad(ByteBuffer.wrap(script.getScriptAsString().getBytes(StandardCharsets.UTF_8))))
+                .then();
+    }
+
+    @NotNull
+    private ScriptMetrics metrics(@NotNull RedisScript<?> script) {
+        String name = names.getOrDefault(script.getSha1(), script.getSha1());
+        return metrics.computeIfAbsent(name, ScriptMetrics::new);
+    }
+
+    @NotNull
+    private static byte[][] keysAndArgs(@NotNull List<String> keys, @NotNull Object[] args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = String.valueOf(args[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return keysAndArgs;
+    }
+
+    //ByteBuffer读过之后position会变，重试时需要新的视图
+    @NotNull
+    private static ByteBuffer[] duplicate(@NotNull ByteBuffer[] buffers) {
+        return Arrays.stream(buffers).map(ByteBuffer::duplicate).toArray(ByteBuffer[]::new);
+    }
+
+    //响应式连接会把数组结果拆成多个元素发出，这里重新合并，与阻塞调用的结果保持一致
+    @NotNull
+    @SuppressWarnings("unchecked")
+    private static <T> Flux<T> collect(@NotNull RedisScript<T> script, @NotNull Flux<T> results) {
+        if (script.getResultType() == null || !List.class.isAssignableFrom(script.getResultType())) {
+            return results;
+        }
+        return results.flatMapIterable(result -> result instanceof List ? (List<Object>) result : Collections.singletonList(result))
+                .collectList()
+                .map(list -> (T) list)
+                .flux();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(Object result) {
+        if (result instanceof byte[]) {
+            return (T) new String((byte[]) result, StandardCharsets.UTF_8);
+        } else if (result instanceof ByteBuffer) {
+            return (T) StandardCharsets.UTF_8.decode((ByteBuffer) result).toString();
+        } else if (result instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) result).size());
+            for (Object item : (List<?>) result) {
+                list.add(deserialize(item));
+            }
+            return (T) list;
+        } else {
+            return (T) result;
+        }
+    }
+
+    /**
+     * 单个脚本的调用统计
+     */
+    public static final class ScriptMetrics {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder reloads = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private ScriptMetrics(@NotNull String name) {
+            this.name = name;
+        }
+
+        private void record(long nanos, boolean error) {
+            calls.increment();
+            if (error) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getReloads() {
+            return reloads.sum();
+        }
+
+        //平均耗时，单位微秒
+        public double getAverageMicros() {
+            long count = calls.sum();
+            return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+        }
+
+        //最大耗时，单位微秒
+        public double getMaxMicros() {
+            return maxNanos.get() / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "{"
+                    + "\"name\":\""
+                    + name + '\"'
+                    + ",\"calls\":"
+                    + getCalls()
+                    + ",\"errors\":"
+                    + getErrors()
+                    + ",\"reloads\":"
+                    + getReloads()
+                    + ",\"averageMicros\":"
+                    + String.format("%.1f", getAverageMicros())
+                    + ",\"maxMicros\":"
+                    + String.format("%.1f", getMaxMicros())
+                    + "}";
+        }
+    }
+}
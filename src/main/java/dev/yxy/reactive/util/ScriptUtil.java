@@ -5,12 +5,29 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * Created by Nuclear on 2021/1/15
  */
 @Component
 public class ScriptUtil {
 
+    //返回整数数组的脚本的结果类型，List.class本身带不了泛型参数
+    @SuppressWarnings("unchecked")
+    private static final Class<List<Long>> LONG_LIST = (Class<List<Long>>) (Class<?>) List.class;
+    //返回字符串数组的脚本的结果类型，字符串由ScriptRegistry按UTF-8解析
+    @SuppressWarnings("unchecked")
+    private static final Class<List<String>> STRING_LIST = (Class<List<String>>) (Class<?>) List.class;
+
+    @Bean(name = "lockScript")
+    public DefaultRedisScript<Long> lockScript() {
+        DefaultRedisScript<Long> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(Long.class);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/lock.lua"));
+        return defaultRedisScript;
+    }
+
     @Bean(name = "unlockScript")
     public DefaultRedisScript<Boolean> unlockScript() {
         DefaultRedisScript<Boolean> defaultRedisScript = new DefaultRedisScript<>();
@@ -19,11 +36,51 @@ public class ScriptUtil {
         return defaultRedisScript;
     }
 
-    @Bean(name = "expireScript")
-    public DefaultRedisScript<Boolean> expireScript() {
+    @Bean(name = "multiLockScript")
+    public DefaultRedisScript<Long> multiLockScript() {
+        DefaultRedisScript<Long> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(Long.class);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/multi_lock.lua"));
+        return defaultRedisScript;
+    }
+
+    @Bean(name = "multiUnlockScript")
+    public DefaultRedisScript<Long> multiUnlockScript() {
+        DefaultRedisScript<Long> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(Long.class);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/multi_unlock.lua"));
+        return defaultRedisScript;
+    }
+
+    @Bean(name = "readLockScript")
+    public DefaultRedisScript<Long> readLockScript() {
+        DefaultRedisScript<Long> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(Long.class);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/read_lock.lua"));
+        return defaultRedisScript;
+    }
+
+    @Bean(name = "writeLockScript")
+    public DefaultRedisScript<Long> writeLockScript() {
+        DefaultRedisScript<Long> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(Long.class);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/write_lock.lua"));
+        return defaultRedisScript;
+    }
+
+    @Bean(name = "readWriteUnlockScript")
+    public DefaultRedisScript<Boolean> readWriteUnlockScript() {
         DefaultRedisScript<Boolean> defaultRedisScript = new DefaultRedisScript<>();
         defaultRedisScript.setResultType(Boolean.class);
-        defaultRedisScript.setLocation(new ClassPathResource("redis/expire.lua"));
+        defaultRedisScript.setLocation(new ClassPathResource("redis/read_write_unlock.lua"));
+        return defaultRedisScript;
+    }
+
+    @Bean(name = "renewScript")
+    public DefaultRedisScript<List<Long>> renewScript() {
+        DefaultRedisScript<List<Long>> defaultRedisScript = new DefaultRedisScript<>();
+        defaultRedisScript.setResultType(LONG_LIST);
+        defaultRedisScript.setLocation(new ClassPathResource("redis/renew.lua"));
         return defaultRedisScript;
     }
 
@@ -42,4 +99,28 @@ public class ScriptUtil {
         script.setLocation(new ClassPathResource("redis/counter.lua"));
         return script;
     }
+
+    @Bean(name = "tokenBucketScript")
+    public DefaultRedisScript<Long> tokenBucketScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("redis/token_bucket.lua"));
+        return script;
+    }
+
+    @Bean(name = "semaphoreScript")
+    public DefaultRedisScript<Long> semaphoreScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setResultType(Long.class);
+        script.setLocation(new ClassPathResource("redis/semaphore.lua"));
+        return script;
+    }
+
+    @Bean(name = "multiCaptchaScript")
+    public DefaultRedisScript<List<String>> multiCaptchaScript() {
+        DefaultRedisScript<List<String>> script = new DefaultRedisScript<>();
+        script.setResultType(STRING_LIST);
+        script.setLocation(new ClassPathResource("redis/multi_captcha.lua"));
+        return script;
+    }
 }
@@ -0,0 +1,42 @@
+package dev.yxy.reactive.util;
+
+import io.lettuce.core.cluster.SlotHash;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 集群模式下按slot分组<br/>
+ * 集群中一条多key命令或一次Lua脚本调用只能访问同一个slot的key，否则redis返回CROSSSLOT；
+ * 需要原子地一起操作的一组key要用{@code {hashtag}}放到同一个slot。
+ */
+public final class SlotUtil {
+
+    private SlotUtil() {
+    }
+
+    /**
+     * 按key的slot分组，组的顺序和组内的顺序都与输入一致
+     *
+     * @param items 待分组的元素
+     * @param key   元素对应的key
+     * @return 每组内的元素都在同一个slot
+     */
+    @NotNull
+    public static <T> Collection<List<T>> groupBySlot(@NotNull Collection<T> items, @NotNull Function<T, String> key) {
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(SlotHash.getSlot(key.apply(item)), slot -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+    /**
+     * @param keys key
+     * @return 所有key是否在同一个slot
+     */
+    public static boolean sameSlot(@NotNull Collection<String> keys) {
+        return keys.stream().map(SlotHash::getSlot).distinct().count() <= 1;
+    }
+}
@@ -0,0 +1,124 @@
+package dev.yxy.reactive.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内的分段锁表<br/>
+ * 每个key对应一把精确的{@link ReentrantLock}，不会因为哈希冲突产生虚假竞争；
+ * 分段只用于降低锁表本身的竞争，没有线程引用的key会被及时移除，锁表不会无限增长。
+ */
+final class StripedLockTable {
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    /**
+     * @param concurrency 分段数，会向上取整为2的幂
+     */
+    StripedLockTable(int concurrency) {
+        int size = Integer.highestOneBit(Math.max(concurrency - 1, 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 尝试获取key对应的本地锁，不等待
+     *
+     * @param key 互斥key
+     * @return 是否获取成功，成功后必须{@link #unlock(String)}
+     */
+    boolean tryLock(@NotNull String key) {
+        ReentrantLock lock = reference(key);
+        if (lock.tryLock()) {
+            return true;
+        }
+        dereference(key);
+        return false;
+    }
+
+    /**
+     * 尝试获取key对应的本地锁，超时返回
+     *
+     * @param key    互斥key
+     * @param millis 最长等待时间(ms)
+     * @return 是否获取成功，成功后必须{@link #unlock(String)}
+     */
+    boolean tryLock(@NotNull String key, long millis) throws InterruptedException {
+        ReentrantLock lock = reference(key);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(millis, TimeUnit.MILLISECONDS);
+            return locked;
+        } finally {
+            if (!locked) {
+                dereference(key);
+            }
+        }
+    }
+
+    /**
+     * 释放key对应的本地锁，必须由加锁的线程调用
+     *
+     * @param key 互斥key
+     */
+    void unlock(@NotNull String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(key);
+            if (entry != null && entry.lock.isHeldByCurrentThread()) {
+                entry.lock.unlock();
+                dereference(stripe, key, entry);
+            }
+        }
+    }
+
+    //增加引用，有引用的key不会从锁表中移除
+    @NotNull
+    private ReentrantLock reference(@NotNull String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.computeIfAbsent(key, k -> new Entry());
+            entry.refs++;
+            return entry.lock;
+        }
+    }
+
+    //减少引用，没有引用时从锁表中移除
+    private void dereference(@NotNull String key) {
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            Entry entry = stripe.entries.get(key);
+            if (entry != null) {
+                dereference(stripe, key, entry);
+            }
+        }
+    }
+
+    private static void dereference(@NotNull Stripe stripe, @NotNull String key, @NotNull Entry entry) {
+        if (--entry.refs <= 0) {
+            stripe.entries.remove(key);
+        }
+    }
+
+    @NotNull
+    private Stripe stripe(@NotNull String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static final class Stripe {
+        private final HashMap<String, Entry> entries = new HashMap<>();
+    }
+
+    private static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int refs;
+    }
+}
@@ -0,0 +1,8 @@
+--KEYS[1]为锁，KEYS[2]为该锁的令牌计数器；ARGV[1]为value，ARGV[2]为持有时间(ms)
+if redis.call("SET", KEYS[1], ARGV[1], "NX", "PX", ARGV[2])
+then
+    --加锁成功，返回单调递增的令牌
+    return redis.call("INCR", KEYS[2])
+else
+    return 0
+end
\ No newline at end of file
@@ -0,0 +1,13 @@
+-- 批量查找并删除一次性的值，按KEYS的顺序返回，不存在的返回空串
+-- 同一个key出现多次时只有第一次能取到值
+local values = {}
+for i, key in ipairs(KEYS) do
+    local value = redis.call("get", key)
+    if value then
+        redis.call("del", key)
+        values[i] = value
+    else
+        values[i] = ""
+    end
+end
+return values
@@ -0,0 +1,12 @@
+--KEYS为需要同时加锁的key(已排序)；ARGV[1]为value，ARGV[2]为持有时间(ms)
+--任何一个key已被持有则全部不加锁
+for i = 1, #KEYS do
+    if redis.call("EXISTS", KEYS[i]) == 1
+    then
+        return 0
+    end
+end
+for i = 1, #KEYS do
+    redis.call("SET", KEYS[i], ARGV[1], "PX", ARGV[2])
+end
+return 1
\ No newline at end of file
@@ -0,0 +1,12 @@
+--KEYS为需要同时解锁的key；ARGV[1]为value，ARGV[2]为解锁通知频道前缀
+local count = 0
+for i = 1, #KEYS do
+    --如果value对比一致，执行删除并通知等待此key的调用方
+    if redis.call("get", KEYS[i]) == ARGV[1]
+    then
+        redis.call("del", KEYS[i])
+        redis.call("PUBLISH", ARGV[2] .. ":" .. KEYS[i], KEYS[i])
+        count = count + 1
+    end
+end
+return count
\ No newline at end of file
@@ -0,0 +1,47 @@
+--KEYS[1]为锁；ARGV[1]为value，ARGV[2]为持有时间(ms)
+--锁是一个hash，mode字段为read或write，waiting字段为等待中的写者的截止时间，
+--其余字段为持有者value及其重入次数，以及"value:lease"记录的该持有者的租期截止时间
+redis.replicate_commands()
+local time = redis.call("TIME")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local lease = now + tonumber(ARGV[2])
+--先移除租期已过的持有者，进程崩溃后留下的读者不会一直被其他读者续期而阻塞写者
+local holders = 0
+local fields = redis.call("HGETALL", KEYS[1])
+for i = 1, #fields, 2 do
+    if string.sub(fields[i], -6) == ":lease"
+    then
+        if tonumber(fields[i + 1]) <= now
+        then
+            redis.call("HDEL", KEYS[1], fields[i], string.sub(fields[i], 1, -7))
+        else
+            holders = holders + 1
+        end
+    end
+end
+if holders == 0
+then
+    redis.call("DEL", KEYS[1])
+end
+local mode = redis.call("HGET", KEYS[1], "mode")
+if mode == false
+then
+    redis.call("HSET", KEYS[1], "mode", "read", ARGV[1], 1, ARGV[1] .. ":lease", lease)
+    redis.call("PEXPIRE", KEYS[1], ARGV[2])
+    return 1
+end
+local holding = redis.call("HEXISTS", KEYS[1], ARGV[1]) == 1
+--有写者在等待时不再接受新的读者，已经持有的读者可以重入；写锁持有者也可以再加读锁
+local waiting = tonumber(redis.call("HGET", KEYS[1], "waiting"))
+if holding or (mode == "read" and (waiting == nil or waiting <= now))
+then
+    redis.call("HINCRBY", KEYS[1], ARGV[1], 1)
+    redis.call("HSET", KEYS[1], ARGV[1] .. ":lease", lease)
+    --多个读者共享过期时间，只延长不缩短
+    if redis.call("PTTL", KEYS[1]) < tonumber(ARGV[2])
+    then
+        redis.call("PEXPIRE", KEYS[1], ARGV[2])
+    end
+    return 1
+end
+return 0
@@ -0,0 +1,20 @@
+--KEYS[1]为锁；ARGV[1]为value，ARGV[2]为解锁通知频道
+if redis.call("HEXISTS", KEYS[1], ARGV[1]) == 0
+then
+    return false
+end
+--重入次数减一，减完后移除此持有者及其租期
+if redis.call("HINCRBY", KEYS[1], ARGV[1], -1) <= 0
+then
+    redis.call("HDEL", KEYS[1], ARGV[1], ARGV[1] .. ":lease")
+end
+--没有持有者的租期字段时说明没有持有者了，删除锁并通知等待方
+for _, field in ipairs(redis.call("HKEYS", KEYS[1])) do
+    if string.sub(field, -6) == ":lease"
+    then
+        return true
+    end
+end
+redis.call("DEL", KEYS[1])
+redis.call("PUBLISH", ARGV[2], KEYS[1])
+return true
@@ -0,0 +1,31 @@
+--KEYS为需要续期的锁，ARGV依次为每把锁的value和租期(ms)
+redis.replicate_commands()
+local time = redis.call("TIME")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local result = {}
+for i = 1, #KEYS do
+    local value = ARGV[2 * i - 1]
+    local millis = tonumber(ARGV[2 * i])
+    --只有锁仍属于本进程时才续期，读写锁是hash，持有者是其中的字段
+    if redis.call("TYPE", KEYS[i]).ok == "hash"
+    then
+        if redis.call("HEXISTS", KEYS[i], value) == 1
+        then
+            --续期自己的租期，整个hash的过期时间由多个持有者共享，只延长不缩短
+            redis.call("HSET", KEYS[i], value .. ":lease", now + millis)
+            if redis.call("PTTL", KEYS[i]) < millis
+            then
+                redis.call("PEXPIRE", KEYS[i], millis)
+            end
+            result[i] = 1
+        else
+            result[i] = 0
+        end
+    elseif redis.call("get", KEYS[i]) == value
+    then
+        result[i] = redis.call("PEXPIRE", KEYS[i], millis)
+    else
+        result[i] = 0
+    end
+end
+return result
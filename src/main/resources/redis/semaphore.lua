@@ -0,0 +1,13 @@
+--KEYS[1]为信号量(zset，score为持有者的过期时间)；ARGV[1]为持有者，ARGV[2]为许可数，ARGV[3]为持有时间(ms)
+redis.replicate_commands()
+local time = redis.call("TIME")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+--先移除已经过期的持有者，避免进程崩溃后许可永远不归还
+redis.call("ZREMRANGEBYSCORE", KEYS[1], "-inf", now)
+if redis.call("ZCARD", KEYS[1]) < tonumber(ARGV[2])
+then
+    redis.call("ZADD", KEYS[1], now + tonumber(ARGV[3]), ARGV[1])
+    redis.call("PEXPIRE", KEYS[1], ARGV[3])
+    return 1
+end
+return 0
\ No newline at end of file
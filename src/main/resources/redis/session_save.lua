@@ -0,0 +1,22 @@
+-- 更新已经存在的session，session已被删除或者过期时返回0，不会重新创建一个只有部分字段的session
+-- KEYS[1] session的key
+-- ARGV[1] 存活时间(ms)，小于0时不过期
+-- ARGV[2] 要写入的字段数n，之后是n对字段和值，再之后是要删除的字段
+if redis.call("EXISTS", KEYS[1]) == 0 then
+    return 0
+end
+local count = tonumber(ARGV[2])
+local last = 2 + count * 2
+if count > 0 then
+    redis.call("HSET", KEYS[1], unpack(ARGV, 3, last))
+end
+if #ARGV > last then
+    redis.call("HDEL", KEYS[1], unpack(ARGV, last + 1, #ARGV))
+end
+local ttl = tonumber(ARGV[1])
+if ttl < 0 then
+    redis.call("PERSIST", KEYS[1])
+else
+    redis.call("PEXPIRE", KEYS[1], ttl)
+end
+return 1
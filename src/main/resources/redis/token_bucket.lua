@@ -0,0 +1,19 @@
+--KEYS[1]为令牌桶；ARGV[1]为每秒生成的令牌数，ARGV[2]为桶容量，ARGV[3]为本次申请的令牌数，负数表示归还
+--使用redis的时间，避免各节点时钟不一致
+redis.replicate_commands()
+local time = redis.call("TIME")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local bucket = redis.call("HMGET", KEYS[1], "tokens", "timestamp")
+local tokens = tonumber(bucket[1]) or capacity
+local timestamp = tonumber(bucket[2]) or now
+--按流逝的时间补充令牌，不超过容量
+tokens = math.min(capacity, tokens + math.max(now - timestamp, 0) * rate / 1000)
+--能给多少给多少，由调用方决定是否够用；申请负数个即为归还，归还后同样不超过容量
+local granted = math.min(requested, math.floor(tokens))
+redis.call("HSET", KEYS[1], "tokens", math.min(capacity, tokens - granted), "timestamp", now)
+--桶装满所需的时间后自动删除
+redis.call("PEXPIRE", KEYS[1], math.ceil(capacity / rate * 1000) + 1000)
+return granted
\ No newline at end of file
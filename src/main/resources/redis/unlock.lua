@@ -4,8 +4,8 @@ then
     --删除key
     if redis.call("del", KEYS[1]) == 1
     then
-        --从锁Key的集合中删除此key
-        redis.call("SREM", KEYS[2], KEYS[1])
+        --通知等待此key的调用方
+        redis.call("PUBLISH", ARGV[2], KEYS[1])
         return true
     else
         return false
@@ -0,0 +1,49 @@
+--KEYS[1]为锁；ARGV[1]为value，ARGV[2]为持有时间(ms)，ARGV[3]为加锁失败后还会等待的时间(ms)
+--锁是一个hash，mode字段为read或write，waiting字段为等待中的写者的截止时间，
+--其余字段为持有者value及其重入次数，以及"value:lease"记录的该持有者的租期截止时间
+redis.replicate_commands()
+local time = redis.call("TIME")
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+--先移除租期已过的持有者，进程崩溃后留下的读者不会一直阻塞写者
+local holders = 0
+local fields = redis.call("HGETALL", KEYS[1])
+for i = 1, #fields, 2 do
+    if string.sub(fields[i], -6) == ":lease"
+    then
+        if tonumber(fields[i + 1]) <= now
+        then
+            redis.call("HDEL", KEYS[1], fields[i], string.sub(fields[i], 1, -7))
+        else
+            holders = holders + 1
+        end
+    end
+end
+if holders == 0
+then
+    redis.call("DEL", KEYS[1])
+end
+local mode = redis.call("HGET", KEYS[1], "mode")
+if mode == false
+then
+    redis.call("HSET", KEYS[1], "mode", "write", ARGV[1], 1, ARGV[1] .. ":lease", now + tonumber(ARGV[2]))
+    redis.call("PEXPIRE", KEYS[1], ARGV[2])
+    return 1
+end
+--写锁独占，只允许持有者重入
+if mode == "write" and redis.call("HEXISTS", KEYS[1], ARGV[1]) == 1
+then
+    redis.call("HINCRBY", KEYS[1], ARGV[1], 1)
+    redis.call("HSET", KEYS[1], ARGV[1] .. ":lease", now + tonumber(ARGV[2]))
+    redis.call("PEXPIRE", KEYS[1], ARGV[2])
+    return 1
+end
+--还要继续等待时标记有写者在等，之后的新读者会被拒绝，避免写者被源源不断的读者饿死
+if tonumber(ARGV[3]) > 0
+then
+    local waiting = now + tonumber(ARGV[3])
+    if waiting > (tonumber(redis.call("HGET", KEYS[1], "waiting")) or 0)
+    then
+        redis.call("HSET", KEYS[1], "waiting", waiting)
+    end
+end
+return 0
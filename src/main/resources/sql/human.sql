@@ -0,0 +1,11 @@
+-- human表，新建数据库时执行
+CREATE TABLE IF NOT EXISTS `human`
+(
+    `id`            BIGINT       NOT NULL AUTO_INCREMENT,
+    `name`          VARCHAR(255) NULL,
+    `age`           INT          NULL,
+    -- 最近一次写入携带的锁令牌，见HumanRepository.saveWithToken
+    `fencing_token` BIGINT       NULL,
+    PRIMARY KEY (`id`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
@@ -0,0 +1,4 @@
+-- 已有的human表增加锁令牌字段，Human实体映射了此字段，不执行的话所有save都会失败
+-- 旧数据为NULL，HumanRepository.saveWithToken对NULL不做限制
+ALTER TABLE `human`
+    ADD COLUMN `fencing_token` BIGINT NULL;
@@ -1,17 +1,37 @@
 package dev.yxy.reactive;
 
+import dev.yxy.reactive.cache.CacheEntry;
+import dev.yxy.reactive.cache.CacheGenerations;
+import dev.yxy.reactive.cache.CacheKeyGenerator;
+import dev.yxy.reactive.cache.DecoratingCacheManager;
+import dev.yxy.reactive.cache.NearCache;
+import dev.yxy.reactive.cache.NearCacheInvalidator;
+import dev.yxy.reactive.cache.ReactiveCache;
+import dev.yxy.reactive.cache.SingleFlightCache;
 import dev.yxy.reactive.handler.CacheHandler;
 import dev.yxy.reactive.model.entity.Person;
+import dev.yxy.reactive.util.LockUtil;
 import org.junit.jupiter.api.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
 
-import java.util.HashSet;
-import java.util.UUID;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
-@SpringBootTest
+//缓存refresh的逻辑存活时间很短，用来测试没有sync的@Cacheable不会读到逻辑过期的值
+@SpringBootTest(properties = "reactive.redis.caches.refresh.ttl=300ms")
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class CacheTest {
     private static final Logger logger = LoggerFactory.getLogger(CacheTest.class);
@@ -19,6 +39,12 @@ public class CacheTest {
     @Autowired
     private CacheHandler cacheHandler;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     @RepeatedTest(2)
     @Order(1)
     void test_add() {
@@ -65,7 +91,188 @@ public class CacheTest {
     @Test
     @Order(4)
     void test_delete_all() {
+        cacheHandler.test_put();
+        long generation = cacheGenerations.generation("cache");
         cacheHandler.delete_all();
+        Assertions.assertEquals(generation + 1, cacheGenerations.generation("cache"), "清空缓存没有进入下一代");
+        Assertions.assertNull(cacheManager.getCache("cache").get("time"), "清空后仍然读到了上一代的缓存");
         logger.info("delete all successfully");
     }
+
+    @Autowired
+    private ReactiveCache reactiveCache;
+
+    @Test
+    @Order(6)
+    void test_reactive_cache() {
+        reactiveCache.evict("reactive", "mono:001").block();
+        reactiveCache.evict("reactive", "flux").block();
+        int loads = cacheHandler.getReactiveLoads();
+        Person first = cacheHandler.test_mono("001").block();
+        Person second = cacheHandler.test_mono("001").block();
+        Assertions.assertNotSame(first, second, "没有从缓存读取");
+        Assertions.assertEquals(first.toString(), String.valueOf(second), "缓存的值不对");
+        Assertions.assertEquals(loads + 1, cacheHandler.getReactiveLoads(), "Mono没有从缓存读取");
+        Assertions.assertEquals(cacheHandler.test_flux().collectList().block(), cacheHandler.test_flux().collectList().block(), "缓存的值不对");
+        Assertions.assertEquals(loads + 2, cacheHandler.getReactiveLoads(), "Flux没有从缓存读取");
+        logger.info("reactive cache successfully");
+    }
+
+    @Test
+    @Order(7)
+    void test_single_flight() throws Exception {
+        cacheHandler.delete_single_flight();
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(exec.submit(() -> cacheHandler.test_single_flight()));
+        }
+        Set<Integer> results = new HashSet<>();
+        for (Future<Integer> future : futures) {
+            results.add(future.get());
+        }
+        exec.shutdown();
+        Assertions.assertEquals(1, results.size(), "同一个key被加载了多次");
+        logger.info("single flight successfully");
+    }
+
+    @Autowired
+    private NearCacheInvalidator nearCacheInvalidator;
+
+    @Test
+    @Order(5)
+    void test_near_cache() {
+        ConcurrentMapCache remote = new ConcurrentMapCache("near");
+        NearCache cache = new NearCache(remote, nearCacheInvalidator, 2, 1000);
+        cache.put("a", 1);
+        remote.evict("a");
+        Assertions.assertEquals(1, cache.get("a", Integer.class), "本地缓存没有命中");
+        cache.put("b", 2);
+        cache.put("c", 3);
+        Assertions.assertNull(cache.get("a"), "本地缓存没有按LRU淘汰");
+        //按字符串长度计算大小，总大小不超过10
+        ConcurrentMapCache weighted = new ConcurrentMapCache("weighted");
+        NearCache sized = new NearCache(weighted, nearCacheInvalidator, 100, 10, value -> value.toString().length(), 1000);
+        sized.put("a", "aaaa");
+        sized.put("b", "bbbb");
+        sized.put("c", "cccc");
+        weighted.clear();
+        Assertions.assertNull(sized.get("a"), "本地缓存没有按大小淘汰");
+        Assertions.assertEquals("bbbb", sized.get("b", String.class), "本地缓存没有命中");
+        Assertions.assertEquals("cccc", sized.get("c", String.class), "本地缓存没有命中");
+        sized.put("d", "ddddddddddd");
+        weighted.clear();
+        Assertions.assertNull(sized.get("d"), "超过上限的值不应该放进本地缓存");
+        logger.info("near cache successfully");
+    }
+
+    @Test
+    @Order(8)
+    void test_stale_while_revalidate() throws Exception {
+        ConcurrentMapCache remote = new ConcurrentMapCache("swr");
+        //逻辑存活时间为0，读到的总是过期的值
+        SingleFlightCache cache = new SingleFlightCache(remote, null, 500, 0, new SingleFlightCache.Refresh(0, 1.0, Runnable::run));
+        cache.put("a", 1);
+        Assertions.assertEquals(1, cache.get("a", () -> 2), "过期的值没有被返回");
+        Assertions.assertEquals(2, ((CacheEntry) remote.get("a").get()).getValue(), "过期的值没有在后台刷新");
+        Thread.sleep(5);
+        Assertions.assertNull(cache.get("a"), "没有sync的读取不应该返回逻辑过期的值");
+        //后台刷新还没执行时删除缓存，同步加载不能等待刷新的结果
+        List<Runnable> queued = new ArrayList<>();
+        SingleFlightCache pending = new SingleFlightCache(remote, null, 500, 0, new SingleFlightCache.Refresh(0, 1.0, queued::add));
+        Assertions.assertEquals(2, pending.get("a", () -> 3), "过期的值没有被返回");
+        pending.evict("a");
+        Assertions.assertEquals(4, pending.get("a", () -> 4), "同步加载等待了后台刷新");
+        queued.forEach(Runnable::run);
+        //刷新任务被拒绝时调用方仍然拿到旧值
+        SingleFlightCache rejected = new SingleFlightCache(remote, null, 500, 0, new SingleFlightCache.Refresh(0, 1.0, command -> {
+            throw new RejectedExecutionException();
+        }));
+        Assertions.assertEquals(3, rejected.get("a", () -> 5), "刷新被拒绝时没有返回旧值");
+        rejected.evict("a");
+        Assertions.assertEquals(6, rejected.get("a", () -> 6), "刷新被拒绝后同步加载失败");
+        logger.info("stale while revalidate successfully");
+    }
+
+    @Test
+    @Order(9)
+    void test_cache_spec() {
+        RedisCacheManager redisCacheManager = (RedisCacheManager) (cacheManager instanceof DecoratingCacheManager ? ((DecoratingCacheManager) cacheManager).getDelegate() : cacheManager);
+        RedisCacheConfiguration configuration = redisCacheManager.getCacheConfigurations().get("x");
+        Assertions.assertNotNull(configuration, "缓存x的单独配置没有生效");
+        Assertions.assertFalse(configuration.getAllowCacheNullValues(), "缓存x不应该缓存null");
+        Assertions.assertTrue(cacheManager.getCache("x") instanceof NearCache, "缓存x没有开启本地缓存");
+        logger.info("cache spec successfully：ttl -> [{}]", configuration.getTtl());
+    }
+
+    @Test
+    @Order(10)
+    void test_key_generator() throws Exception {
+        CacheKeyGenerator generator = new CacheKeyGenerator(64);
+        Method method = CacheHandler.class.getMethod("test_keyGenerator", long.class);
+        //cacheHandler是CGLIB代理，类名带$$EnhancerBySpringCGLIB$$，这里用原始对象
+        Object handler = AopProxyUtils.getSingletonTarget(cacheHandler);
+        Assertions.assertEquals("CacheHandler.test_keyGenerator:100", generator.generate(handler, method, 100L));
+        Assertions.assertEquals("CacheHandler.test_keyGenerator", generator.generate(handler, method), "无参数方法的key不正确");
+        String hashed = (String) generator.generate(handler, method, String.join("", Collections.nCopies(100, "x")));
+        Assertions.assertEquals("CacheHandler.test_keyGenerator:#".length() + 32, hashed.length(), "长key没有使用摘要");
+
+        //对比原来每次拼接StringBuilder的写法
+        KeyGenerator concat = (target, m, params) -> {
+            StringBuilder builder = new StringBuilder();
+            builder.append(target.getClass().getSimpleName()).append(".").append(m.getName()).append(":");
+            for (int i = 0; i < params.length - 1; i++) {
+                builder.append(params[i]).append("-");
+            }
+            builder.append(params[params.length - 1]);
+            return builder.toString();
+        };
+        int rounds = 1_000_000;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            benchmark(concat, handler, method, rounds);
+            benchmark(generator, handler, method, rounds);
+        }
+        logger.info("key generator：concat -> [{}ns/op], cached prefix -> [{}ns/op]", benchmark(concat, handler, method, rounds), benchmark(generator, handler, method, rounds));
+    }
+
+    private static long benchmark(KeyGenerator generator, Object target, Method method, int rounds) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            sink += generator.generate(target, method, (long) i, "name").hashCode();
+        }
+        if (sink == 42) {
+            logger.trace("sink");
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    @Test
+    @Order(11)
+    void test_expired_without_sync() throws Exception {
+        cacheHandler.delete_refresh();
+        int first = cacheHandler.test_refresh();
+        Assertions.assertEquals(first, cacheHandler.test_refresh(), "逻辑存活时间内没有从缓存读取");
+        Thread.sleep(400);
+        Assertions.assertEquals(first + 1, cacheHandler.test_refresh(), "逻辑过期后没有重新加载");
+        logger.info("expired without sync successfully");
+    }
+
+    @Autowired
+    private LockUtil lockUtil;
+
+    /**
+     * 从节点还没有同步时，拿到锁后的复查读主节点，不重复加载
+     */
+    @Test
+    @Order(12)
+    void test_primary_recheck() {
+        ConcurrentMapCache replica = new ConcurrentMapCache("replica");
+        ConcurrentMapCache primary = new ConcurrentMapCache("replica");
+        primary.put("a", 1);
+        SingleFlightCache cache = new SingleFlightCache(replica, primary, lockUtil, 500, 0, null);
+        Assertions.assertEquals(1, cache.get("a", () -> 2), "复查没有读主节点");
+        Assertions.assertNull(replica.get("a"), "复查命中后不应该重新加载");
+        logger.info("primary recheck successfully");
+    }
 }
@@ -1,29 +1,55 @@
 package dev.yxy.reactive;
 
 import cn.hutool.json.JSONUtil;
+import dev.yxy.reactive.handler.OneTimeTokenHandler;
 import dev.yxy.reactive.model.entity.Person;
+import dev.yxy.reactive.session.LazyRedisSessionRepository;
+import dev.yxy.reactive.util.BinaryRedisSerializer;
 import dev.yxy.reactive.util.CustomRedisSerializer;
+import dev.yxy.reactive.util.LockHandle;
 import dev.yxy.reactive.util.LockUtil;
+import dev.yxy.reactive.util.LockWaitQueue;
+import dev.yxy.reactive.util.ReactiveBulkUtil;
+import dev.yxy.reactive.util.ReactiveRateLimiter;
+import dev.yxy.reactive.util.ReactiveLockUtil;
+import dev.yxy.reactive.util.RedisCommandBatcher;
+import dev.yxy.reactive.util.ReadWriteLockUtil;
+import dev.yxy.reactive.util.ScriptRegistry;
+import dev.yxy.reactive.util.SlotUtil;
+import io.lettuce.core.cluster.SlotHash;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.*;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.util.Assert;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static dev.yxy.reactive.util.LockUtil.deviceKey;
+import static dev.yxy.reactive.util.LockUtil.fenceKey;
 
-@SpringBootTest
+//开启命令合并，test_command_batcher才会走合并发送
+@SpringBootTest(properties = {"reactive.redis.batching.enabled=true", "reactive.redis.replica-reads.cache=true"})
 public class RedisTest {
     private static final Logger logger = LoggerFactory.getLogger(RedisTest.class);
 
@@ -42,6 +68,15 @@ public class RedisTest {
     @Autowired
     private LockUtil lockUtil;
 
+    @Autowired
+    private ReactiveLockUtil reactiveLockUtil;
+
+    @Autowired
+    private ReadWriteLockUtil readWriteLockUtil;
+
+    @Autowired
+    private ReactiveRateLimiter reactiveRateLimiter;
+
     /**
      * 测试自定义序列化器{@link CustomRedisSerializer}序列化
      */
@@ -130,6 +165,64 @@ public class RedisTest {
         logger.info("add string successfully");
     }
 
+    @Autowired
+    private RedisTemplate<String, Long> counterRedisTemplate;
+
+    /**
+     * 测试自定义序列化器{@link CustomRedisSerializer}的数字类型，直接解析为对应的包装类型
+     */
+    @Test
+    void test_typed_number() {
+        CustomRedisSerializer<Long> serializer = new CustomRedisSerializer<>(Long.class);
+        stringRedisTemplate.opsForValue().set("counter:01", "0");
+        stringRedisTemplate.opsForValue().increment("counter:01", 100);
+        Long value = redisTemplate.execute((RedisCallback<Long>) connection -> serializer.deserialize(connection.get("counter:01".getBytes())));
+        Assert.isTrue(Objects.equals(value, 100L), "解析的值不对");
+        Assert.isTrue(Objects.equals(serializer.deserialize(serializer.serialize(Long.MIN_VALUE)), Long.MIN_VALUE), "解析的值不对");
+        for (long number : new long[]{0, 7, -7, 10, -10, Long.MAX_VALUE}) {
+            Assert.isTrue(Arrays.equals(serializer.serialize(number), String.valueOf(number).getBytes()), "编码的值不对：" + number);
+        }
+        //计数器template读出的直接是Long
+        Assert.isTrue(Objects.equals(counterRedisTemplate.opsForValue().get("counter:01"), 100L), "计数器template读出的值不对");
+        stringRedisTemplate.delete("counter:01");
+    }
+
+    /**
+     * 测试二进制序列化器{@link BinaryRedisSerializer}，反序列化后得到原来的对象
+     */
+    @Test
+    void test_binary_serializer() {
+        HashSet<String> set = new HashSet<>();
+        set.add("Hello");
+        set.add("world");
+        Person person = new Person();
+        person.setId(UUID.randomUUID().toString());
+        person.setName("中文");
+        person.setAge(20);
+        person.setRoles(set);
+
+        BinaryRedisSerializer serializer = new BinaryRedisSerializer();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("person", person);
+        map.put("list", List.of(person, person));
+        map.put("date", new Date());
+        map.put("chars", new char[]{'a', 'b'});
+        map.put("emoji", "表情\uD83D\uDE00");
+        byte[] bytes = serializer.serialize(map);
+        logger.info("binary = {}, json = {}", bytes.length, CustomRedisSerializer.json().serialize(map).length);
+        redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set("binary:01".getBytes(), bytes));
+        Object result = serializer.deserialize(redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get("binary:01".getBytes())));
+        Assert.isTrue(result instanceof Map && ((Map<?, ?>) result).get("person") instanceof Person, "反序列化的类型不对");
+        Map<?, ?> values = (Map<?, ?>) result;
+        Assert.isTrue(person.toString().equals(values.get("person").toString()), "反序列化的对象不对");
+        Assert.isTrue(Arrays.equals(new char[]{'a', 'b'}, (char[]) values.get("chars")), "反序列化的字符数组不对");
+        Assert.isTrue("表情\uD83D\uDE00".equals(values.get("emoji")), "代理对反序列化不对");
+        //代理对按UTF-8编码为4个字节
+        byte[] emoji = serializer.serialize("\uD83D\uDE00");
+        Assert.isTrue(new String(emoji, emoji.length - 4, 4, StandardCharsets.UTF_8).equals("\uD83D\uDE00"), "代理对不是按UTF-8编码的");
+        logger.info("result = {}", result);
+    }
+
     /**
      * 测试自定义序列化器{@link CustomRedisSerializer}反序列化后在reactive流中的影响
      */
@@ -216,22 +309,329 @@ public class RedisTest {
         exec.awaitTermination(10, TimeUnit.SECONDS);
     }
 
+    /**
+     * 本地竞争者先在锁表上排队，轮到时锁一定已经被释放，每次加锁只访问一次redis
+     */
+    @Test
+    void test_lock_local_contenders() throws InterruptedException {
+        String key = deviceKey("local");
+        int threads = 4;
+        long before = lockCalls();
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        AtomicInteger locked = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            exec.submit(() -> {
+                if (lockUtil.lockTimeOut(key, 1000, 3)) {
+                    try {
+                        locked.incrementAndGet();
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    } finally {
+                        lockUtil.unlock(key);
+                    }
+                }
+            });
+        }
+        exec.shutdown();
+        exec.awaitTermination(10, TimeUnit.SECONDS);
+        Assert.isTrue(locked.get() == threads, "有线程没有获取到锁");
+        Assert.isTrue(lockCalls() - before == threads, "本地竞争者访问了redis：" + (lockCalls() - before));
+    }
+
+    //lock.lua的调用次数
+    private long lockCalls() {
+        return scriptRegistry.metrics().stream()
+                .filter(metric -> metric.getName().equals("lock"))
+                .mapToLong(ScriptRegistry.ScriptMetrics::getCalls)
+                .sum();
+    }
+
+    /**
+     * 测试锁令牌，每次加锁获得的令牌都比上一次大
+     */
+    @Test
+    void test_fencing_token() {
+        String key = deviceKey("1000");
+        long last = 0;
+        for (int i = 0; i < 3; i++) {
+            Assert.isTrue(lockUtil.lock(key), "加锁失败");
+            try {
+                long token = lockUtil.fencingToken();
+                Assert.isTrue(token > last, "令牌没有递增");
+                last = token;
+            } finally {
+                lockUtil.unlock(key);
+            }
+        }
+        //令牌计数器和锁在同一个slot，集群模式下lock.lua才不会CROSSSLOT
+        for (String k : List.of(key, "{order}:1", "a{b")) {
+            Assert.isTrue(SlotHash.getSlot(k) == SlotHash.getSlot(fenceKey(k)), "令牌计数器和锁[" + k + "]不在同一个slot");
+        }
+    }
+
+    /**
+     * 测试多key原子加锁，有交集的两组key按顺序加锁不会死锁<br/>
+     * key用{group}放到同一个slot，集群模式下也能一次脚本调用加锁
+     */
+    @Test
+    void test_lock_all() throws InterruptedException {
+        Assert.isTrue(SlotUtil.sameSlot(List.of(deviceKey("{group}:1"), deviceKey("{group}:2"), deviceKey("{group}:3"))), "一组锁的key不在同一个slot");
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 6; i++) {
+            List<String> keys = i % 2 == 0 ? List.of(deviceKey("{group}:1"), deviceKey("{group}:2")) : List.of(deviceKey("{group}:3"), deviceKey("{group}:2"));
+            exec.submit(() -> {
+                if (lockUtil.lockAll(keys)) {
+                    try {
+                        logger.info("[{}] do something with {}", Thread.currentThread().getId(), keys);
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    } finally {
+                        lockUtil.unlockAll();
+                    }
+                }
+            });
+        }
+        exec.shutdown();
+        exec.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 测试按slot分组，组的顺序和组内的顺序与输入一致
+     */
+    @Test
+    void test_slot_groups() {
+        List<String> keys = List.of("{a}:1", "{b}:1", "{a}:2", "{b}:2", "{a}:3");
+        List<List<String>> groups = new ArrayList<>(SlotUtil.groupBySlot(keys, key -> key));
+        Assert.isTrue(groups.equals(List.of(List.of("{a}:1", "{a}:2", "{a}:3"), List.of("{b}:1", "{b}:2"))), "分组结果不对：" + groups);
+        Assert.isTrue(!SlotUtil.sameSlot(keys), "不同hashtag的key不应该在同一个slot");
+        logger.info("slot groups successfully");
+    }
+
+    /**
+     * 测试读写锁，读者并行，写者独占
+     */
+    @Test
+    void test_read_write_lock() throws InterruptedException {
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 8; i++) {
+            boolean write = i % 4 == 3;
+            exec.submit(() -> {
+                String key = deviceKey("config");
+                boolean locked = write ? readWriteLockUtil.writeLockTimeOut(key) : readWriteLockUtil.readLockTimeOut(key);
+                if (locked) {
+                    try {
+                        logger.info("[{}] {} something", Thread.currentThread().getId(), write ? "write" : "read");
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    } finally {
+                        readWriteLockUtil.unlock(key);
+                    }
+                }
+            });
+        }
+        exec.shutdown();
+        exec.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 租期已过的读者会被移除，不会一直阻塞写者；等待中的写者会阻止新的读者
+     */
+    @Test
+    void test_read_write_lock_lease() throws Exception {
+        String key = deviceKey("lease");
+        //模拟进程崩溃后留下的读者，整个hash的过期时间还被其他读者延长着
+        stringRedisTemplate.opsForHash().putAll(key, Map.of("mode", "read", "dead", "1", "dead:lease", String.valueOf(System.currentTimeMillis() - 60 * 1000)));
+        stringRedisTemplate.expire(key, Duration.ofMinutes(1));
+        Assert.isTrue(readWriteLockUtil.writeLock(key), "租期已过的读者仍然阻塞写者");
+        readWriteLockUtil.unlock(key);
+
+        Assert.isTrue(readWriteLockUtil.readLock(key), "加读锁失败");
+        try {
+            ExecutorService exec = Executors.newSingleThreadExecutor();
+            Future<Boolean> writer = exec.submit(() -> {
+                boolean locked = readWriteLockUtil.writeLockTimeOut(key, 500, 4);
+                if (locked) {
+                    readWriteLockUtil.unlock(key);
+                }
+                return locked;
+            });
+            Thread.sleep(200);
+            //另一个线程作为新的读者，写者在等待时应该被拒绝
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            Assert.isTrue(!other.submit(() -> readWriteLockUtil.readLock(key)).get(), "写者等待时新的读者仍然可以加锁");
+            other.shutdown();
+            readWriteLockUtil.unlock(key);
+            Assert.isTrue(writer.get(5, TimeUnit.SECONDS), "读者释放后写者没有获取到锁");
+            exec.shutdown();
+        } finally {
+            stringRedisTemplate.delete(key);
+        }
+    }
+
+    /**
+     * 测试响应式互斥锁，内层对同一个key加锁视为重入，同一时刻只有一个持有者
+     */
+    @Test
+    void test_reactive_lock() {
+        String key = deviceKey("1000");
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        AtomicInteger reentered = new AtomicInteger();
+        Long finished = Flux.range(0, 7)
+                .flatMap(i -> reactiveLockUtil.withLock(key, Duration.ofSeconds(3), outer ->
+                        reactiveLockUtil.withLock(key, inner -> {
+                            if (outer == inner) {
+                                reentered.incrementAndGet();
+                            }
+                            maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                            logger.info("[{}] do something", i);
+                            return Mono.delay(Duration.ofMillis(200)).thenReturn(i).doFinally(signal -> holders.decrementAndGet());
+                        })))
+                .doOnNext(i -> logger.info("[{}] finish something", i))
+                .count()
+                .block(Duration.ofSeconds(10));
+        Assert.isTrue(Objects.requireNonNull(finished) > 0, "没有任何一次加锁成功");
+        Assert.isTrue(reentered.get() == finished, "重入没有共享同一个锁凭证");
+        Assert.isTrue(maxHolders.get() == 1, "锁被同时持有");
+        Assert.isTrue(!Objects.requireNonNull(stringRedisTemplate.hasKey(key)), "全部解锁后锁仍然存在");
+    }
+
+    /**
+     * 加锁成功后立即取消，锁凭证没有交出，redis上的锁应该被释放
+     */
+    @Test
+    void test_reactive_lock_cancel() throws InterruptedException {
+        String key = deviceKey("cancel");
+        reactiveLockUtil.lock(key).subscribe(new BaseSubscriber<LockHandle>() {
+            @Override
+            protected void hookOnSubscribe(@NotNull Subscription subscription) {
+                subscription.request(1);
+                //脚本已经发出，结果还没有返回时取消
+                cancel();
+            }
+        });
+        Thread.sleep(500);
+        Assert.isNull(stringRedisTemplate.opsForValue().get(key), "取消加锁后锁没有释放");
+    }
+
+    /**
+     * 测试令牌桶限流，容量为10时突发的100个请求只能通过10个左右
+     */
+    @Test
+    void test_rate_limiter() {
+        String key = ReactiveRateLimiter.rateLimitKey("test:" + UUID.randomUUID());
+        Long passed = Flux.range(0, 100)
+                .flatMap(i -> reactiveRateLimiter.tryAcquire(key, 5, 10, 5))
+                .filter(Boolean::booleanValue)
+                .count()
+                .block(Duration.ofSeconds(10));
+        //测试期间按每秒5个补充的令牌也可能被用掉
+        Assert.isTrue(Objects.requireNonNull(passed) >= 10 && passed <= 15, "通过的请求数不对：" + passed);
+        logger.info("rate limiter successfully：passed -> [{}], rejected -> [{}]", passed, 100 - passed);
+    }
+
+    /**
+     * 并发请求数大于每次预取的令牌数时，redis的桶里还有令牌就不应该拒绝
+     */
+    @Test
+    void test_rate_limiter_batch() {
+        String key = ReactiveRateLimiter.rateLimitKey("test:" + UUID.randomUUID());
+        Long passed = Flux.range(0, 100)
+                .flatMap(i -> reactiveRateLimiter.tryAcquire(key, 1000, 100, 20))
+                .filter(Boolean::booleanValue)
+                .count()
+                .block(Duration.ofSeconds(10));
+        Assert.isTrue(Objects.equals(passed, 100L), "桶里有令牌时仍然拒绝了请求：" + passed);
+        stringRedisTemplate.delete(key);
+    }
+
     @Autowired
-    private DefaultRedisScript<Boolean> expireScript;
+    private DefaultRedisScript<List<Long>> renewScript;
 
     /**
-     * 测试原子操作-延长缓存寿命
+     * 测试原子操作-只给value一致的锁续期
      */
     @Test
-    void test_expire() {
+    void test_renew() {
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
         for (int i = 0; i < 5; i++) {
             String key = deviceKey("00" + i);
-            redisTemplate.opsForValue().set(key, key, Duration.ofSeconds(5));
-            redisTemplate.opsForSet().add("lock", key);
+            stringRedisTemplate.opsForValue().set(key, key, Duration.ofSeconds(5));
+            keys.add(key);
+            args.add(i % 2 == 0 ? key : "other");
+            args.add(String.valueOf(60 * 1000));
+        }
+        List<Long> result = stringRedisTemplate.execute(renewScript, keys, args.toArray());
+        Assert.isTrue(List.of(1L, 0L, 1L, 0L, 1L).equals(result), "续期结果不对");
+        for (int i = 0; i < keys.size(); i++) {
+            Long ttl = stringRedisTemplate.getExpire(keys.get(i), TimeUnit.SECONDS);
+            //持有者一致的锁续到60s，不一致的保持原来的5s
+            Assert.isTrue(i % 2 == 0 ? ttl > 5 : ttl <= 5, "锁[" + keys.get(i) + "]的存活时间不对：" + ttl);
         }
-        redisTemplate.expire("lock", Duration.ofSeconds(20));
-        Boolean aBoolean = redisTemplate.execute(expireScript, Collections.singletonList("lock"), 60);
-        System.out.println("aBoolean = " + aBoolean);
+        stringRedisTemplate.delete(keys);
+        logger.info("renew successfully：{}", result);
+    }
+
+    @Autowired
+    private ScriptRegistry scriptRegistry;
+
+    @Autowired
+    private DefaultRedisScript<Long> lockScript;
+
+    @Autowired
+    private DefaultRedisScript<Boolean> unlockScript;
+
+    /**
+     * 测试EVALSHA调用，清空脚本缓存后应自动重新加载
+     */
+    @Test
+    void test_script_registry() {
+        String key = deviceKey("script");
+        //先调用一次，保证两个脚本都有统计
+        scriptRegistry.execute(unlockScript, List.of(key), key, LockWaitQueue.releaseChannel(key));
+        Long token = scriptRegistry.execute(lockScript, List.of(key, fenceKey(key)), key, 30 * 1000);
+        Assert.isTrue(token != null && token > 0, "加锁没有返回令牌");
+        ScriptRegistry.ScriptMetrics lock = metric("lock");
+        ScriptRegistry.ScriptMetrics unlock = metric("unlock");
+        long lockCalls = lock.getCalls(), lockReloads = lock.getReloads();
+        long unlockCalls = unlock.getCalls(), unlockReloads = unlock.getReloads(), unlockErrors = unlock.getErrors();
+
+        //响应式调用收到NOSCRIPT后重新加载
+        scriptFlush();
+        Boolean unlocked = scriptRegistry.executeReactive(unlockScript, List.of(key), key, LockWaitQueue.releaseChannel(key)).blockFirst();
+        Assert.isTrue(Boolean.TRUE.equals(unlocked), "清空脚本缓存后解锁失败");
+        Assert.isTrue(unlock.getCalls() == unlockCalls + 1, "解锁的调用次数不对");
+        Assert.isTrue(unlock.getReloads() == unlockReloads + 1, "解锁时没有重新加载脚本");
+        Assert.isTrue(unlock.getErrors() == unlockErrors, "重新加载后仍然记为错误");
+
+        //阻塞调用收到NOSCRIPT后重新加载
+        scriptFlush();
+        Long next = scriptRegistry.execute(lockScript, List.of(key, fenceKey(key)), key, 30 * 1000);
+        Assert.isTrue(next != null && next > token, "清空脚本缓存后加锁失败");
+        Assert.isTrue(lock.getCalls() == lockCalls + 1, "加锁的调用次数不对");
+        Assert.isTrue(lock.getReloads() == lockReloads + 1, "加锁时没有重新加载脚本");
+
+        scriptRegistry.execute(unlockScript, List.of(key), key, LockWaitQueue.releaseChannel(key));
+        scriptRegistry.metrics().forEach(metric -> logger.info("{}", metric));
+    }
+
+    private void scriptFlush() {
+        stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.scriptFlush();
+            return null;
+        });
+    }
+
+    @NotNull
+    private ScriptRegistry.ScriptMetrics metric(@NotNull String name) {
+        return scriptRegistry.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("脚本[" + name + "]没有调用统计"));
     }
 
     /**
@@ -285,6 +685,188 @@ public class RedisTest {
         Assert.isNull(o, "缓存没有删除");
     }
 
+    @Autowired
+    private OneTimeTokenHandler oneTimeTokenHandler;
+
+    /**
+     * 测试并发消费一次性令牌，同一窗口内的请求合并执行，每个令牌只能被消费一次
+     */
+    @Test
+    void test_one_time_token() {
+        List<String> keys = new ArrayList<>();
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            String key = OneTimeTokenHandler.tokenKey("00" + i);
+            oneTimeTokenHandler.issue(key, String.valueOf(i), Duration.ofMinutes(1)).block();
+            keys.add(key);
+            expected.add(String.valueOf(i));
+        }
+        //每个令牌并发消费两次，只有一次能取到值
+        List<String> values = Flux.fromIterable(keys)
+                .concatWith(Flux.fromIterable(keys))
+                .flatMap(key -> oneTimeTokenHandler.consume(key))
+                .collectList()
+                .block();
+        Assert.isTrue(Objects.requireNonNull(values).size() == keys.size(), "令牌被重复消费：" + values);
+        Assert.isTrue(expected.equals(new HashSet<>(values)), "消费到的值不对：" + values);
+        Assert.isNull(oneTimeTokenHandler.consume(keys.get(0)).block(), "已消费的令牌仍然可以消费");
+
+        //校验失败同样会消费掉令牌
+        String key = OneTimeTokenHandler.tokenKey("verify");
+        String value = oneTimeTokenHandler.issue(key, Duration.ofMinutes(1)).block();
+        Assert.isTrue(!Objects.requireNonNull(oneTimeTokenHandler.verify(key, "wrong").block()), "错误的值校验通过");
+        Assert.isTrue(!Objects.requireNonNull(oneTimeTokenHandler.verify(key, Objects.requireNonNull(value)).block()), "校验失败后令牌仍然有效");
+        logger.info("one time token successfully：{}", values);
+    }
+
+    @Autowired
+    @Qualifier("reactiveReplicaRedisTemplate")
+    private ReactiveRedisTemplate<String, Object> reactiveReplicaRedisTemplate;
+
+    /**
+     * 写主节点，读从节点，复制有延迟所以重试几次
+     */
+    @Test
+    void test_replica_read() {
+        String key = "REPLICA-READ:" + UUID.randomUUID();
+        Object value = reactiveRedisTemplate.opsForValue().set(key, "replica", Duration.ofMinutes(1))
+                .then(reactiveReplicaRedisTemplate.opsForValue().get(key)
+                        .repeatWhenEmpty(5, flux -> flux.delayElements(Duration.ofMillis(100))))
+                .block();
+        Assert.isTrue("replica".equals(value), "从节点没有读到主节点写入的值");
+        reactiveRedisTemplate.delete(key).block();
+    }
+
+    @Autowired
+    @Qualifier("lettuceConnectionFactory")
+    private LettuceConnectionFactory lettuceConnectionFactory;
+
+    /**
+     * 对比共享连接和连接池两种模式下的响应式吞吐<br/>
+     * 连接池模式关闭shareNativeConnection，每个命令都要从池中借用连接
+     */
+    @Test
+    void test_shared_connection_benchmark() {
+        //与共享连接的工厂使用同一种部署方式(单机、哨兵或集群)
+        RedisConfiguration configuration = lettuceConnectionFactory.isClusterAware() ? lettuceConnectionFactory.getClusterConfiguration()
+                : lettuceConnectionFactory.isRedisSentinelAware() ? lettuceConnectionFactory.getSentinelConfiguration()
+                : lettuceConnectionFactory.getStandaloneConfiguration();
+        LettuceConnectionFactory pooledFactory = new LettuceConnectionFactory(configuration, lettuceConnectionFactory.getClientConfiguration());
+        pooledFactory.setShareNativeConnection(false);
+        pooledFactory.afterPropertiesSet();
+        try {
+            ReactiveStringRedisTemplate pooled = new ReactiveStringRedisTemplate(pooledFactory);
+            String key = "BENCHMARK:" + UUID.randomUUID();
+            reactiveStringRedisTemplate.opsForValue().set(key, "value", Duration.ofMinutes(1)).block();
+            int total = 20000, concurrency = 256;
+            for (int round = 0; round < 2; round++) {
+                long shared = benchmark(reactiveStringRedisTemplate, key, total, concurrency);
+                long pool = benchmark(pooled, key, total, concurrency);
+                logger.info("{} GET, 并发{}：shared -> [{}ms], pooled -> [{}ms]", total, concurrency, shared, pool);
+            }
+            reactiveStringRedisTemplate.delete(key).block();
+        } finally {
+            pooledFactory.destroy();
+        }
+    }
+
+    private static long benchmark(ReactiveStringRedisTemplate template, String key, int total, int concurrency) {
+        long start = System.currentTimeMillis();
+        Long count = Flux.range(0, total)
+                .flatMap(i -> template.opsForValue().get(key), concurrency)
+                .count()
+                .block();
+        Assert.isTrue(Objects.equals(count, (long) total), "有命令没有返回");
+        return System.currentTimeMillis() - start;
+    }
+
+    @Autowired
+    private RedisCommandBatcher redisCommandBatcher;
+
+    /**
+     * 并发计数，开启batching时这些INCRBY会合并成几次pipeline
+     */
+    @Test
+    void test_command_batcher() {
+        String key = "BATCH-COUNTER:" + UUID.randomUUID();
+        int total = 1000;
+        Flux.range(0, total)
+                .flatMap(i -> redisCommandBatcher.increment(key, 1), 128)
+                .then(redisCommandBatcher.expire(key, Duration.ofMinutes(1)))
+                .block();
+        String count = redisCommandBatcher.get(key).block();
+        Assert.isTrue(String.valueOf(total).equals(count), "合并发送后计数不正确");
+
+        //同一批中一个命令失败，只有它的调用方收到错误
+        String text = "BATCH-TEXT:" + UUID.randomUUID();
+        redisCommandBatcher.set(text, "abc", Duration.ofMinutes(1)).block();
+        List<Boolean> failed = Flux.merge(
+                redisCommandBatcher.increment(text, 1).map(v -> false).onErrorReturn(true),
+                redisCommandBatcher.get(key).map(v -> !String.valueOf(total).equals(v)).onErrorReturn(true),
+                redisCommandBatcher.increment(key, 1).map(v -> v != total + 1).onErrorReturn(true))
+                .collectList()
+                .block();
+        Assert.isTrue(Objects.requireNonNull(failed).stream().filter(Boolean::booleanValue).count() == 1, "一个命令失败影响了同一批的其他命令：" + failed);
+        redisCommandBatcher.delete(text).block();
+        redisCommandBatcher.delete(key).block();
+        logger.info("command batcher successfully：count -> [{}]", count);
+    }
+
+    @Autowired
+    private ReactiveBulkUtil reactiveBulkUtil;
+
+    @Test
+    void test_bulk() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            keys.add("BULK:" + i);
+        }
+        Long written = reactiveBulkUtil.multiSet(Flux.fromIterable(keys).filter(key -> !key.endsWith("7")).map(key -> new AbstractMap.SimpleImmutableEntry<>(key, key)), Duration.ofMinutes(1)).block();
+        List<Map.Entry<String, Object>> entries = reactiveBulkUtil.multiGet(Flux.fromIterable(keys)).collectList().block();
+        Assert.isTrue(Objects.requireNonNull(entries).size() == keys.size(), "批量读取的个数不正确");
+        for (int i = 0; i < keys.size(); i++) {
+            Map.Entry<String, Object> entry = entries.get(i);
+            Assert.isTrue(entry.getKey().equals(keys.get(i)), "批量读取的顺序不正确");
+            Assert.isTrue(entry.getKey().endsWith("7") ? entry.getValue() == null : entry.getKey().equals(entry.getValue()), "批量读取的值不正确");
+        }
+        reactiveRedisTemplate.delete(keys.toArray(new String[0])).block();
+        logger.info("bulk successfully：written -> [{}]", written);
+    }
+
+    @Autowired
+    private LazyRedisSessionRepository sessionRepository;
+
+    @Test
+    void test_lazy_session() {
+        LazyRedisSessionRepository.LazyRedisSession session = Objects.requireNonNull(sessionRepository.createSession().block());
+        session.setAttribute("加密通话", "歪比歪比, 歪比巴卜");
+        session.setAttribute("showTime", 1L);
+        sessionRepository.save(session).block();
+
+        LazyRedisSessionRepository.LazyRedisSession found = Objects.requireNonNull(sessionRepository.findById(session.getId()).block());
+        Assert.isTrue(found.getAttributeNames().containsAll(Arrays.asList("加密通话", "showTime")), "session属性丢失");
+        Assert.isTrue("歪比歪比, 歪比巴卜".equals(found.getAttribute("加密通话")), "session属性不正确");
+        //只删除一个属性，另一个不应该受影响
+        found.removeAttribute("showTime");
+        sessionRepository.save(found).block();
+
+        LazyRedisSessionRepository.LazyRedisSession again = Objects.requireNonNull(sessionRepository.findById(session.getId()).block());
+        Assert.isNull(again.getAttribute("showTime"), "删除的属性仍然存在");
+        Assert.isTrue("歪比歪比, 歪比巴卜".equals(again.getAttribute("加密通话")), "没有修改的属性丢失");
+        sessionRepository.deleteById(session.getId()).block();
+
+        //session被删除后再保存，不能重新创建出一个只有部分字段的session
+        again.setAttribute("showTime", 2L);
+        Boolean saved = sessionRepository.save(again).thenReturn(true).onErrorReturn(IllegalStateException.class, false).block();
+        Assert.isTrue(Boolean.FALSE.equals(saved), "已删除的session保存成功了");
+        Assert.isNull(sessionRepository.findById(session.getId()).block(), "已删除的session被重新创建");
+        again.changeSessionId();
+        saved = sessionRepository.save(again).thenReturn(true).onErrorReturn(IllegalStateException.class, false).block();
+        Assert.isTrue(Boolean.FALSE.equals(saved), "已删除的session改id成功了");
+        Assert.isNull(sessionRepository.findById(again.getId()).block(), "已删除的session被重新创建");
+        logger.info("lazy session successfully");
+    }
+
     //redisTemplate没有提供scan方法，自定义一个
     public Set<String> scan(String pattern) {
         return redisTemplate.execute((RedisCallback<Set<String>>) connection -> {